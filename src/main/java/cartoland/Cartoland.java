@@ -1,7 +1,8 @@
 package cartoland;
 
+import cartoland.commands.AdminCommand;
 import cartoland.events.*;
-import cartoland.utilities.AddCommands;
+import cartoland.utilities.*;
 import net.dv8tion.jda.api.JDA;
 import net.dv8tion.jda.api.JDABuilder;
 import net.dv8tion.jda.api.entities.Activity;
@@ -38,6 +39,10 @@ public class Cartoland
 		if (args.length == 0) //在終端機執行java -jar Cartoland.jar時 沒有帶參數
 			return;
 
+		//在連線到Discord的同時 平行讀取serialize資料夾內的檔案
+		FileHandle.loadStores(JsonHandle.class, TimerHandle.class, CommandBlocksHandle.class, AnonymousHandle.class,
+							  AdminCommand.class, NewMember.class, IntroductionHandle.class);
+
 		jda = JDABuilder.createDefault(args[0]) //以第一個參數為token 啟動機器人
 				.addEventListeners( //新增事件聆聽
 						new BotOnlineOffline(args.length > 1 ? args[1] : "", args.length > 2 ? args[2] : ""), //當機器人上下線的時候
@@ -59,6 +64,7 @@ public class Cartoland
 
 		jda.updateCommands().addCommands(AddCommands.commands()).queue(); //添加指令 裡面的程式簡直是一團亂 能跑就行
 
+		FileHandle.awaitStores(); //確保開機時的讀取都完成了
 		jda.awaitReady();
 	}
 }
\ No newline at end of file
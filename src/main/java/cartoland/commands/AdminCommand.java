@@ -43,24 +43,30 @@ public class AdminCommand extends HasSubcommands
 			tempBanSet.remove(this); //不再紀錄這名使用者 無論群組是否已經不在了
 		}
 	}
-	@SuppressWarnings("unchecked")
-	public static final Set<BanData> tempBanSet = CastToInstance.modifiableSet(FileHandle.deserialize(TEMP_BAN_SET));
+	public static final Set<BanData> tempBanSet = FileHandle.journaledSet(TEMP_BAN_SET);
 
 	public static final String MUTE = "mute";
 	public static final String TEMP_BAN = "temp_ban";
 	public static final String SLOW_MODE = "slow_mode";
-
-	static
-	{
-		FileHandle.registerSerialize(TEMP_BAN_SET, tempBanSet); //註冊串聯化
-	}
+	public static final String STATS = "stats";
 
 	public AdminCommand()
 	{
-		super(3);
+		super(4);
 		subcommands.put(MUTE, new MuteSubcommand());
 		subcommands.put(TEMP_BAN, new TempBanSubcommand());
 		subcommands.put(SLOW_MODE, new SlowModeSubcommand());
+		subcommands.put(STATS, event ->
+		{
+			if (event.getUser().getIdLong() != IDs.AC_ID) //不是我
+			{
+				event.reply("You can't do that.").setEphemeral(true).queue();
+				return;
+			}
+			event.reply(LatencyHandle.render()).setEphemeral(true).queue(); //合併各執行緒的紀錄
+			event.getHook().sendMessage(RateLimiter.render() + '\n' + JiraHandle.render() + '\n' + JiraClient.render()).setEphemeral(true).queue(); //分開傳 避免超過2000字
+			event.getHook().sendMessage("```\n" + FileHandle.snapshotStatistics() + "dropped logs: " + FileHandle.droppedLogs() + "```").setEphemeral(true).queue(); //儲存和紀錄的狀況
+		});
 	}
 
 	/**
@@ -4,6 +4,7 @@ import cartoland.mini_games.ConnectFourGame;
 import cartoland.mini_games.MiniGame;
 import cartoland.utilities.CommonFunctions;
 import cartoland.utilities.JsonHandle;
+import cartoland.utilities.RateLimiter;
 import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
 
 /**
@@ -23,7 +24,7 @@ public class ConnectFourCommand extends HasSubcommands
 
 	public ConnectFourCommand(MiniGame.MiniGameMap games)
 	{
-		super(4);
+		super(4, new RateLimiter(CONNECT_FOUR, 5, 1000L));
 
 		subcommands.put(START, event ->
 		{
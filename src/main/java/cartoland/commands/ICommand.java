@@ -1,6 +1,10 @@
 package cartoland.commands;
 
 import cartoland.mini_games.MiniGame;
+import cartoland.utilities.DispatchTable;
+import cartoland.utilities.FileHandle;
+import cartoland.utilities.JsonHandle;
+import cartoland.utilities.RateLimiter;
 import cartoland.utilities.TimerHandle;
 import net.dv8tion.jda.api.entities.User;
 import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
@@ -73,10 +77,26 @@ public interface ICommand
 class HasSubcommands implements ICommand
 {
 	protected final Map<String, ICommand> subcommands; //子指令們
+	private final RateLimiter rateLimiter; //null代表不限制
+	private DispatchTable<ICommand> dispatchTable; //子類別的建構子放完subcommands後 第一次使用時才建立
 
 	protected HasSubcommands(int subcommandsCount)
+	{
+		this(subcommandsCount, null);
+	}
+
+	/**
+	 * For commands that write data or queue many REST requests, which should not be spammed.
+	 *
+	 * @param subcommandsCount How many subcommands this command has.
+	 * @param rateLimiter Limits how often a user can use this command, or null for no limit.
+	 * @since 2.2
+	 * @author Alex Cai
+	 */
+	protected HasSubcommands(int subcommandsCount, RateLimiter rateLimiter)
 	{
 		subcommands = HashMap.newHashMap(subcommandsCount);
+		this.rateLimiter = rateLimiter;
 	}
 
 	/**
@@ -90,7 +110,27 @@ class HasSubcommands implements ICommand
 	@Override
 	public void commandProcess(SlashCommandInteractionEvent event)
 	{
-		subcommands.get(event.getSubcommandName()).commandProcess(event); //透過HashMap選擇子指令
+		if (rateLimiter != null)
+		{
+			long userID = event.getUser().getIdLong();
+			long waitMillis = rateLimiter.tryAcquire(userID);
+			if (waitMillis != 0L) //太快了
+			{
+				event.reply(JsonHandle.getString(userID, "rate_limit.too_fast", (waitMillis + 999L) / 1000L)).setEphemeral(true).queue();
+				return;
+			}
+		}
+		DispatchTable<ICommand> table = dispatchTable;
+		if (table == null) //表是不可變的 就算兩個執行緒同時建立也沒關係
+			dispatchTable = table = new DispatchTable<>(subcommands);
+		ICommand subcommand = table.get(event.getSubcommandName()); //透過完美雜湊選擇子指令
+		if (subcommand == null) //沒有這個子指令 不應該發生
+		{
+			event.reply("Unknown subcommand.").setEphemeral(true).queue();
+			FileHandle.log("Unknown subcommand /", event.getName(), ' ', event.getSubcommandName());
+			return;
+		}
+		subcommand.commandProcess(event);
 	}
 }
 
@@ -107,10 +147,9 @@ abstract class GameSubcommand implements ICommand
 	{
 		User user = event.getUser();
 		MiniGame game = games.remove(user.getIdLong());
-		int[] time = TimerHandle.getTime();
 		event.reply(replyMessage) //回覆訊息
 			.addFiles(FileUpload.fromData(game.getRecord().getBytes(), //附上紀錄
-					user.getEffectiveName() + '_' + TimerHandle.getDateString() + '_' + String.format("%02d%02d%02d", time[0], time[1], time[2]) + ".txt"))
+					user.getEffectiveName() + '_' + TimerHandle.getDateString() + '_' + TimerHandle.getCompactTimeString() + ".txt"))
 			.queue(); //傳送最終結果並上傳紀錄
 	}
 }
\ No newline at end of file
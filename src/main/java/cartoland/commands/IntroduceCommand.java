@@ -10,7 +10,6 @@ import net.dv8tion.jda.api.exceptions.ErrorHandler;
 import net.dv8tion.jda.api.requests.ErrorResponse;
 
 import java.util.List;
-import java.util.Map;
 
 /**
  * {@code IntroduceCommand} is an execution when a user uses /introduce command. This class implements
@@ -22,22 +21,12 @@ import java.util.Map;
  */
 public class IntroduceCommand extends HasSubcommands
 {
-	private static final String INTRODUCTION_FILE_NAME = "serialize/introduction.ser";
-
-	@SuppressWarnings("unchecked")
-	private static final Map<Long, String> introduction = CastToInstance.modifiableMap(FileHandle.deserialize(INTRODUCTION_FILE_NAME));
-
 	public static final String USER = "user";
 
 	public static final String UPDATE = "update";
 
 	public static final String DELETE = "delete";
 
-	static
-	{
-		FileHandle.registerSerialize(INTRODUCTION_FILE_NAME, introduction); //註冊串聯化
-	}
-
 	public IntroduceCommand()
 	{
 		super(3);
@@ -47,7 +36,8 @@ public class IntroduceCommand extends HasSubcommands
 			User user = event.getUser();
 			User target = event.getOption("user", user, CommonFunctions.getAsUser); //沒有填 預設是自己
 
-			event.reply(introduction.getOrDefault(target.getIdLong(), JsonHandle.getString(user.getIdLong(), "introduce.user.no_info")))
+			String introduction = IntroductionHandle.getIntroduction(target.getIdLong());
+			event.reply(introduction != null ? introduction : JsonHandle.getString(user.getIdLong(), "introduce.user.no_info"))
 					.setEphemeral(true)
 					.queue();
 		});
@@ -56,13 +46,13 @@ public class IntroduceCommand extends HasSubcommands
 		{
 			long userID = event.getUser().getIdLong();
 			event.reply(JsonHandle.getString(userID, "introduce.update.delete")).queue();
-			introduction.remove(userID); //刪除自我介紹
+			IntroductionHandle.deleteIntroduction(userID); //刪除自我介紹
 		});
 	}
 
 	/**
 	 * Update the user introduction. Whenever user typed anything in the elf-intro channel, the message will
-	 * be store into {@link #introduction}.
+	 * be store into {@link IntroductionHandle}.
 	 *
 	 * @param userID The ID of the user that are going to update his/her introduction.
 	 * @param content The content of the introduction that the user want to replace the old one.
@@ -71,7 +61,7 @@ public class IntroduceCommand extends HasSubcommands
 	 */
 	public static void updateIntroduction(long userID, String content)
 	{
-		introduction.put(userID, content);
+		IntroductionHandle.updateIntroduction(userID, content);
 	}
 
 	/**
@@ -93,7 +83,7 @@ public class IntroduceCommand extends HasSubcommands
 			if (content.isEmpty()) //空的代表刪除
 			{
 				event.reply(JsonHandle.getString(userID, "introduce.update.delete")).queue();
-				introduction.remove(userID); //刪除自我介紹
+				IntroductionHandle.deleteIntroduction(userID); //刪除自我介紹
 				return;
 			}
 
@@ -1,21 +1,18 @@
 package cartoland.commands;
 
 import cartoland.utilities.CommonFunctions;
+import cartoland.utilities.FileHandle;
+import cartoland.utilities.JiraClient;
+import cartoland.utilities.JiraHandle;
 import cartoland.utilities.JsonHandle;
 import cartoland.utilities.RegularExpressions;
 import net.dv8tion.jda.api.EmbedBuilder;
+import net.dv8tion.jda.api.entities.MessageEmbed;
 import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
 import net.dv8tion.jda.api.interactions.InteractionHook;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
-import org.jsoup.select.Elements;
 
 import java.awt.Color;
-import java.io.IOException;
 import java.time.ZonedDateTime;
-import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeParseException;
 import java.util.Locale;
 import java.util.regex.Matcher;
 
@@ -46,66 +43,85 @@ public class JiraCommand implements ICommand
 			hook.sendMessage(JsonHandle.getString(userID, "jira.invalid_link")).setEphemeral(true).queue();
 			return;
 		}
-		String link = "https://bugs.mojang.com/browse/" + bugID;
-
-		Document document; //HTML文件
-		try
-		{
-			document = Jsoup.connect(link).get(); //嘗試連線
-		}
-		catch (IOException e)
+		JiraHandle.issue(bugID).whenComplete((issue, exception) -> //不會卡住事件執行緒 查到後再回覆
 		{
-			hook.sendMessage(JsonHandle.getString(userID, "jira.no_bug", bugID)).setEphemeral(true).queue();
-			return;
-		}
+			try
+			{
+				reply(hook, userID, bugID, issue, exception);
+			}
+			catch (RuntimeException replyException) //在HTTP client的執行緒上 不抓住的話會消失在future裡 而且回覆會一直停在思考中
+			{
+				FileHandle.log(replyException);
+				hook.sendMessage(JsonHandle.getString(userID, "jira.cannot_show", bugID)).setEphemeral(true).queue();
+			}
+		});
+	}
 
-		Element issueContent = document.getElementById("issue-content"); //這樣之後就不用總是從整個document內get element
-		if (issueContent == null) //如果不存在id為issue-content的標籤
+	private void reply(InteractionHook hook, long userID, String bugID, JiraHandle.Issue issue, Throwable exception)
+	{
+		if (exception == null)
 		{
-			hook.sendMessage(JsonHandle.getString(userID, "jira.no_issue", link)).setEphemeral(true).queue();
+			hook.sendMessage(issue.link()).setEmbeds(bugEmbed(issue)).queue();
 			return;
 		}
+		String reply;
+		if (JiraHandle.cause(exception) instanceof JiraHandle.NoIssueException noIssue) //有回應 但是沒有這個bug
+			reply = noIssue.pageExists() ? JsonHandle.getString(userID, "jira.no_issue", JiraClient.link(bugID)) : JsonHandle.getString(userID, "jira.no_bug", bugID);
+		else //連線失敗 逾時 或是斷路器開著
+			reply = JsonHandle.getString(userID, "jira.unavailable");
+		hook.sendMessage(reply).setEphemeral(true).queue();
+	}
 
+	/**
+	 * Build the embed of an issue, which is shown by {@code /jira} and by the bug links in messages.
+	 *
+	 * @param issue The issue.
+	 * @return The embed, titled with the bug ID and summary.
+	 * @since 2.2
+	 * @author Alex Cai
+	 */
+	public static MessageEmbed bugEmbed(JiraHandle.Issue issue)
+	{
+		String title = '[' + issue.bugID() + "] " + issue.summary(); //embed標題是[bug ID]bug標題
+		if (title.length() > MessageEmbed.TITLE_MAX_LENGTH) //標題太長的話setTitle會擲出例外
+			title = title.substring(0, MessageEmbed.TITLE_MAX_LENGTH - 1) + '…';
 		EmbedBuilder bugEmbed = new EmbedBuilder()
 				.setThumbnail("https://bugs.mojang.com/jira-favicon-hires.png") //縮圖為Mojang
 				.setColor(MOJANG_RED) //左邊的顏色是縮圖的紅色
-				.setTitle('[' + bugID + "] " + textValue(issueContent.getElementById("summary-val")), link); //embed標題是[bug ID]bug標題 點了會連結到jira頁面
+				.setTitle(title, issue.link()); //點了會連結到jira頁面
 
-		String description = textValue(issueContent.getElementById("description-val")).strip(); //bug描述
+		String description = issue.description(); //bug描述
 		int descriptionLength = description.length(); //小於等於DESCRIPTION_CHARACTERS就全文放下
 		bugEmbed.appendDescription(descriptionLength <= DESCRIPTION_CHARACTERS ? description : new StringBuilder(description).replace(DESCRIPTION_CHARACTERS - 1, descriptionLength, "…"));
 
 		//如果該HTML元素不為null 就取該元素的文字 否則放空字串 比起找不到就直接回傳embed 使用者們較能一目了然
 		//當field被設定為inline時 在電腦版看來 就會是三個排成一列
-		String status = textValue(issueContent.getElementById("opsbar-transitions_more"));
+		String status = issue.status();
 		bugEmbed.addField("Status", status, true)
-				.addField("Resolution", textValue(issueContent.getElementById("resolution-val")), true)
-				.addField("Mojang priority", textValue(issueContent.getElementById("customfield_12200-val")), true);
+				.addField("Resolution", issue.resolution(), true)
+				.addField("Mojang priority", issue.priority(), true);
 
-		Element versionsField = issueContent.getElementById("versions-field");
-		Element allAffectsVersions = versionsField != null ? versionsField : new Element("span");
 		//影響的版本
-		String firstVersion = textValue(allAffectsVersions.firstElementChild());
-		String lastVersion = textValue(allAffectsVersions.lastElementChild());
+		String firstVersion = issue.firstAffectsVersion();
+		String lastVersion = issue.lastAffectsVersion();
 		//如果不一樣就加波浪號
 		String affectsVersions = firstVersion.equals(lastVersion) ? firstVersion : firstVersion + '~' + lastVersion;
 
-		//此處不用getFirst()和getLast() firstElementChild()lastElementChild()會在沒有元素時回傳null 而不是擲出NoSuchElementException
 		bugEmbed.addField("Affects versions", affectsVersions, true)
-				.addField("Fix version/s", textValue(issueContent.getElementById("fixfor-val")), true);
+				.addField("Fix version/s", issue.fixVersions(), true);
 
 		if ("Resolved".equals(status))
 		{
-			ZonedDateTime resolvedTime = timeValue(issueContent.getElementById("resolutiondate-val"));
+			ZonedDateTime resolvedTime = issue.resolved();
 			bugEmbed.addField("Resolved", resolvedTime == null ? "None" : "<t:" + resolvedTime.toEpochSecond() + ":R>", true);
 		}
 		else
 			bugEmbed.addField("", "", true);
 
-		bugEmbed.setFooter(textValue(issueContent.getElementById("project-name-val")), attributeValue(issueContent.getElementById("project-avatar"), "src", null))
-				.setTimestamp(timeValue(issueContent.getElementById("created-val"))); //建立的時間
+		bugEmbed.setFooter(issue.projectName(), issue.projectAvatar())
+				.setTimestamp(issue.created()); //建立的時間
 
-		hook.sendMessage(link).setEmbeds(bugEmbed.build()).queue();
+		return bugEmbed.build();
 	}
 
 	private String findBugID(String inputLink)
@@ -127,35 +143,4 @@ public class JiraCommand implements ICommand
 
 		return "";
 	}
-
-	private String textValue(Element element)
-	{
-		return element != null ? element.text() : "";
-	}
-
-	//2015-09-03T13:30:22+0200
-	private final DateTimeFormatter dateTimeFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ssZ");
-
-	private ZonedDateTime timeValue(Element element)
-	{
-		if (element == null)
-			return null;
-		Elements timeTags = element.getElementsByTag("time"); //找尋裡面的<time>
-		if (timeTags.isEmpty())
-			return null;
-		//取得<time>裡的datetime後 透過Formatter轉換為ZonedDateTime物件 再透過toEpochSecond()方法轉換為unix時間
-		try
-		{
-			return ZonedDateTime.parse(attributeValue(timeTags.getFirst(), "datetime", "1970-01-01T00:00:00+0000"), dateTimeFormatter);
-		}
-		catch (DateTimeParseException e)
-		{
-			return null;
-		}
-	}
-
-	private String attributeValue(Element element, String attributeKey, String defaultValue)
-	{
-		return element != null ? element.attr(attributeKey) : defaultValue;
-	}
 }
\ No newline at end of file
@@ -4,6 +4,7 @@ import cartoland.mini_games.LightOutGame;
 import cartoland.mini_games.MiniGame;
 import cartoland.utilities.CommonFunctions;
 import cartoland.utilities.JsonHandle;
+import cartoland.utilities.RateLimiter;
 import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
 
 public class LightOutCommand extends HasSubcommands
@@ -15,7 +16,7 @@ public class LightOutCommand extends HasSubcommands
 
 	public LightOutCommand(MiniGame.MiniGameMap games)
 	{
-		super(4);
+		super(4, new RateLimiter(LIGHT_OUT, 5, 1000L));
 		subcommands.put(START, event ->
 		{
 			long userID = event.getUser().getIdLong();
@@ -31,7 +31,7 @@ public class LotteryCommand extends HasSubcommands
 
 	public LotteryCommand()
 	{
-		super(5);
+		super(5, new RateLimiter(LOTTERY, 5, 2000L)); //每2秒補1次 最多連續5次
 		subcommands.put(GET, new GetSubCommand());
 		subcommands.put(BET, new BetSubCommand());
 		subcommands.put(RANKING, new RankingSubCommand());
@@ -5,6 +5,7 @@ import cartoland.mini_games.OneATwoBGame;
 import cartoland.utilities.CommandBlocksHandle;
 import cartoland.utilities.CommonFunctions;
 import cartoland.utilities.JsonHandle;
+import cartoland.utilities.RateLimiter;
 import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
 
 /**
@@ -28,7 +29,7 @@ public class OneATwoBCommand extends HasSubcommands
 
 	public OneATwoBCommand(MiniGame.MiniGameMap games)
 	{
-		super(3);
+		super(3, new RateLimiter(ONE_A_TWO_B, 5, 1000L)); //每秒補1次 最多連續5次
 		subcommands.put(START, event ->
 		{
 			long userID = event.getUser().getIdLong();
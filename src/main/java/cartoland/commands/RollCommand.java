@@ -13,6 +13,7 @@ import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEve
 import net.dv8tion.jda.api.interactions.commands.OptionMapping;
 
 import java.time.OffsetDateTime;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Random;
@@ -55,7 +56,7 @@ public class RollCommand extends HasSubcommands
 
 			Role targetRole = event.getOption("role", cartoland.getRoleById(IDs.MEMBER_ROLE_ID), OptionMapping::getAsRole); //目標身分組
 
-			List<Long> allMembers = NewMember.getAllMembersList(); //所有成員們的ID
+			List<Long> allMembers = new ArrayList<>(NewMember.getAllMembersList()); //所有成員們的ID 複製一份 同時執行的/roll才不會洗到同一個list
 			Collections.shuffle(allMembers); //洗牌
 			for (Long userID : allMembers) //一個一個看
 			{
@@ -1,11 +1,9 @@
 package cartoland.commands;
 
-import cartoland.Cartoland;
 import cartoland.utilities.CommonFunctions;
 import cartoland.utilities.TimerHandle;
 import net.dv8tion.jda.api.entities.channel.middleman.GuildChannel;
 import net.dv8tion.jda.api.entities.channel.middleman.GuildMessageChannel;
-import net.dv8tion.jda.api.entities.channel.middleman.MessageChannel;
 import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
 
 import java.util.Set;
@@ -84,18 +82,8 @@ public class ScheduleCommand extends HasSubcommands
 
 			boolean once = event.getOption("once", Boolean.FALSE, CommonFunctions.getAsBoolean); //是否為一次性
 
-			long channelID = guildChannel.getIdLong(); //頻道ID
-			Runnable sendMessageToChannel = () -> //事件內容的Runnable
-			{
-				MessageChannel channel = Cartoland.getJDA().getChannelById(MessageChannel.class, channelID); //尋找頻道
-				if (channel != null) //如果找到頻道
-					channel.sendMessage(content).queue(); //發送訊息
-			};
-			TimerHandle.registerScheduledEvent(name, new TimerHandle.TimerEvent((byte) time, once ? () -> //如果是一次性
-			{
-				sendMessageToChannel.run(); //執行Runnable
-				TimerHandle.unregisterScheduledEvent(name); //執行完後刪除事件
-			} : sendMessageToChannel)); //不是一次性 就直接把Runnable傳入
+			//只儲存描述 Runnable由TimerHandle建立
+			TimerHandle.registerScheduledEvent(name, new TimerHandle.ScheduledEvent((byte) time, guildChannel.getIdLong(), content, once));
 
 			event.reply("The bot will send \"" + first20Characters + (contentLength > 20 ? "…" : "") + "\" to " + guildChannel.getAsMention() + " at " + time + (once ? " once." : " everyday.")).queue();
 		}
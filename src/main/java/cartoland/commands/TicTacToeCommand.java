@@ -4,6 +4,7 @@ import cartoland.mini_games.MiniGame;
 import cartoland.mini_games.TicTacToeGame;
 import cartoland.utilities.CommonFunctions;
 import cartoland.utilities.JsonHandle;
+import cartoland.utilities.RateLimiter;
 import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
 
 /**
@@ -23,7 +24,7 @@ public class TicTacToeCommand extends HasSubcommands
 
 	public TicTacToeCommand(MiniGame.MiniGameMap games)
 	{
-		super(3);
+		super(3, new RateLimiter(TIC_TAC_TOE, 5, 1000L));
 
 		subcommands.put(START, event ->
 		{
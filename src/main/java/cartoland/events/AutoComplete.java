@@ -1,6 +1,8 @@
 package cartoland.events;
 
+import cartoland.utilities.CompletionIndex;
 import cartoland.utilities.JsonHandle;
+import cartoland.utilities.LatencyHandle;
 import cartoland.utilities.TimerHandle;
 import net.dv8tion.jda.api.events.interaction.command.CommandAutoCompleteInteractionEvent;
 import net.dv8tion.jda.api.hooks.ListenerAdapter;
@@ -57,7 +59,18 @@ public class AutoComplete extends ListenerAdapter
 	@Override
 	public void onCommandAutoCompleteInteraction(CommandAutoCompleteInteractionEvent event)
 	{
-		commands.get(event.getName()).completeProcess(event);
+		String commandName = event.getName();
+		long begin = System.nanoTime();
+		boolean failed = true;
+		try
+		{
+			commands.get(commandName).completeProcess(event);
+			failed = false;
+		}
+		finally
+		{
+			LatencyHandle.record("auto complete /" + commandName, System.nanoTime() - begin, failed);
+		}
 	}
 
 	/**
@@ -72,29 +85,24 @@ public class AutoComplete extends ListenerAdapter
 	private static abstract class GenericComplete
 	{
 		abstract void completeProcess(CommandAutoCompleteInteractionEvent event);
-
-		protected static Command.Choice stringToChoice(String keyAndValue)
-		{
-			return new Command.Choice(keyAndValue, keyAndValue);
-		}
 	}
 
 	/**
 	 * {@code JsonBasedComplete} is a subclass of {@code GenericComplete}, which handles the auto complete of command
-	 * /cmd, /faq, /dtp and their alias. This class use {@link JsonHandle#commandList(String)} to get this information.
+	 * /cmd, /faq, /dtp and their alias. This class use {@link JsonHandle#commandChoices(String, String)} to get this information.
 	 *
 	 * @since 1.6
 	 * @author Alex Cai
 	 */
 	private static class JsonBasedComplete extends GenericComplete
 	{
+		private final String commandName;
 		private final String commandNameKey;
-		private final List<String> commandList;
 
 		private JsonBasedComplete(String commandName)
 		{
+			this.commandName = commandName;
 			commandNameKey = commandName + "_name";
-			commandList = JsonHandle.commandList(commandName);
 		}
 
 		@Override
@@ -105,12 +113,7 @@ public class AutoComplete extends ListenerAdapter
 				return;
 
 			String optionValue = focusedOption.getValue(); //獲取目前正在打的選項
-			event.replyChoices( //將字串串流轉換為選項列表
-					commandList.stream()
-							.filter(word -> word.startsWith(optionValue))
-							.limit(OptionData.MAX_CHOICES)
-							.map(GenericComplete::stringToChoice)
-							.toList()).queue();
+			event.replyChoices(JsonHandle.commandChoices(commandName, optionValue)).queue(); //選項是讀取語言檔時就建好的
 		}
 	}
 
@@ -137,17 +140,13 @@ public class AutoComplete extends ListenerAdapter
 			new YouTuber("惡靈oreki", "@oreki20"),
 			new YouTuber("收音機", "@radio0529")
 		};
+		private final CompletionIndex index = new CompletionIndex(Arrays.stream(youtubers).map(YouTuber::toChoice).toList());
 
 		@Override
 		void completeProcess(CommandAutoCompleteInteractionEvent event)
 		{
-			String optionValue = event.getFocusedOption().getValue(); //將字串串流轉換為選項列表
-			event.replyChoices(
-					Arrays.stream(youtubers)
-							.filter(youtuber -> youtuber.nameContains(optionValue))
-							.limit(OptionData.MAX_CHOICES)
-							.map(YouTuber::toChoice)
-							.toList()).queue();
+			String optionValue = event.getFocusedOption().getValue();
+			event.replyChoices(index.complete(optionValue, OptionData.MAX_CHOICES)).queue(); //容許打錯字
 		}
 
 		/**
@@ -160,11 +159,6 @@ public class AutoComplete extends ListenerAdapter
 		 */
 		private record YouTuber(String name, String ID)
 		{
-			private boolean nameContains(String s)
-			{
-				return name.contains(s);
-			}
-
 			private Command.Choice toChoice()
 			{
 				return new Command.Choice(name, ID);
@@ -227,6 +221,9 @@ public class AutoComplete extends ListenerAdapter
 
 	private static class ScheduleComplete extends GenericComplete
 	{
+		private Set<String> indexedNames = Collections.emptySet(); //建立index時的排程名稱
+		private CompletionIndex index = CompletionIndex.ofNames(indexedNames);
+
 		@Override
 		void completeProcess(CommandAutoCompleteInteractionEvent event)
 		{
@@ -234,14 +231,18 @@ public class AutoComplete extends ListenerAdapter
 			if (!"name".equals(focusedOption.getName())) //必須要是name
 				return;
 			String optionValue = focusedOption.getValue();
-			event.replyChoices(
-					TimerHandle.scheduledEventsNames()
-							.stream()
-							.filter(name -> name.contains(optionValue))
-							.limit(OptionData.MAX_CHOICES)
-							.map(GenericComplete::stringToChoice)
-							.toList())
-					.queue();
+			event.replyChoices(currentIndex().complete(optionValue, OptionData.MAX_CHOICES)).queue(); //容許打錯字
+		}
+
+		private synchronized CompletionIndex currentIndex()
+		{
+			Set<String> names = TimerHandle.scheduledEventsNames();
+			if (!indexedNames.equals(names)) //排程有變動才重建
+			{
+				indexedNames = Set.copyOf(names);
+				index = CompletionIndex.ofNames(indexedNames);
+			}
+			return index;
 		}
 	}
 }
\ No newline at end of file
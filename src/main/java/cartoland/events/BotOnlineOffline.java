@@ -66,6 +66,7 @@ public class BotOnlineOffline extends ListenerAdapter
 	public void onShutdown(@NotNull ShutdownEvent event)
 	{
 		FileHandle.serialize(); //所有有註冊的物件
+		UsageLogHandle.close(); //指令使用紀錄
 
 		TimerHandle.stopTimer(); //停止每小時的事件執行緒
 
@@ -2,6 +2,8 @@ package cartoland.events;
 
 import cartoland.buttons.*;
 import cartoland.utilities.FileHandle;
+import cartoland.utilities.LatencyHandle;
+import cartoland.utilities.UsageLogHandle;
 import net.dv8tion.jda.api.entities.User;
 import net.dv8tion.jda.api.events.interaction.component.ButtonInteractionEvent;
 import net.dv8tion.jda.api.hooks.ListenerAdapter;
@@ -33,8 +35,20 @@ public class ClickedButton extends ListenerAdapter
 	public void onButtonInteraction(ButtonInteractionEvent event)
 	{
 		String componentName = event.getComponentId();
-		buttons.get(componentName).buttonProcess(event);
 		User user = event.getUser();
+		long begin = System.nanoTime();
+		byte outcome = UsageLogHandle.FAILED;
+		try
+		{
+			buttons.get(componentName).buttonProcess(event);
+			outcome = UsageLogHandle.OK;
+		}
+		finally
+		{
+			long latency = System.nanoTime() - begin;
+			UsageLogHandle.record(UsageLogHandle.BUTTON, user.getIdLong(), componentName, null, latency, outcome);
+			LatencyHandle.record('[' + componentName + ']', latency, outcome == UsageLogHandle.FAILED);
+		}
 		FileHandle.log(user.getName(), '(', user.getId(), ") [", componentName + ']');
 	}
 }
\ No newline at end of file
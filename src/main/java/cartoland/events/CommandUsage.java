@@ -10,9 +10,12 @@ import net.dv8tion.jda.api.entities.User;
 import net.dv8tion.jda.api.entities.channel.concrete.TextChannel;
 import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
 import net.dv8tion.jda.api.hooks.ListenerAdapter;
+import net.dv8tion.jda.api.interactions.commands.Command;
+import net.dv8tion.jda.api.interactions.commands.build.CommandData;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 import static cartoland.commands.ICommand.*;
 
@@ -30,6 +33,16 @@ public class CommandUsage extends ListenerAdapter
 	 */
 	private final Map<String, ICommand> commands = new HashMap<>();
 
+	/**
+	 * Commands that wait for Discord, they are run by {@link CommandExecutor}.
+	 */
+	private final Set<String> blockingCommands = Set.of(ROLL);
+
+	/**
+	 * Built from {@link #commands} and the names in {@link AddCommands#commands()}, used to find the command of an event.
+	 */
+	private final DispatchTable<Route> routes;
+
 	/**
 	 * 403 images about Megumin.
 	 */
@@ -172,6 +185,24 @@ public class CommandUsage extends ListenerAdapter
 
 		//light_out
 		commands.put(LIGHT_OUT, new LightOutCommand(games));
+
+		//用AddCommands註冊的指令名稱建表 兩邊對不上的都記錄下來
+		Map<String, Route> registered = new HashMap<>();
+		for (CommandData commandData : AddCommands.commands())
+		{
+			if (commandData.getType() != Command.Type.SLASH) //右鍵選單不在這裡處理
+				continue;
+			String commandName = commandData.getName();
+			ICommand command = commands.get(commandName);
+			if (command == null)
+				FileHandle.log("Slash command /", commandName, " is registered but has no handler");
+			else
+				registered.put(commandName, new Route(command, blockingCommands.contains(commandName)));
+		}
+		for (String commandName : commands.keySet())
+			if (!registered.containsKey(commandName))
+				FileHandle.log("Slash command /", commandName, " has a handler but is not registered");
+		routes = new DispatchTable<>(registered);
 	}
 
 	/**
@@ -183,11 +214,39 @@ public class CommandUsage extends ListenerAdapter
 	 */
 	@Override
 	public void onSlashCommandInteraction(SlashCommandInteractionEvent event)
+	{
+		Route route = routes.get(event.getName());
+		if (route == null) //沒有註冊的指令 不應該發生
+		{
+			event.reply("Unknown command.").setEphemeral(true).queue();
+			FileHandle.log("Unknown slash command /", event.getName());
+			return;
+		}
+		if (route.blocking) //會卡住的指令 交給虛擬執行緒 不要拖累其他指令
+			CommandExecutor.execute(route.command, event, () -> process(route.command, event));
+		else //大部分的指令都很快 直接在事件執行緒執行
+			process(route.command, event);
+	}
+
+	private void process(ICommand command, SlashCommandInteractionEvent event)
 	{
 		String commandName = event.getName();
-		commands.get(commandName).commandProcess(event);
+		String subcommandName = event.getSubcommandName();
 		User user = event.getUser();
-		FileHandle.log(user.getName(), '(', user.getId(), ") /", commandName, ' ', event.getSubcommandName()); //IO放最後 避免超過3秒限制
+		long begin = System.nanoTime();
+		byte outcome = UsageLogHandle.FAILED; //沒有正常結束 就是失敗
+		try
+		{
+			command.commandProcess(event);
+			outcome = UsageLogHandle.OK;
+		}
+		finally
+		{
+			long latency = System.nanoTime() - begin;
+			UsageLogHandle.record(UsageLogHandle.SLASH_COMMAND, user.getIdLong(), commandName, subcommandName, latency, outcome);
+			LatencyHandle.record(subcommandName == null ? '/' + commandName : '/' + commandName + ' ' + subcommandName, latency, outcome == UsageLogHandle.FAILED);
+		}
+		FileHandle.log(user.getName(), '(', user.getId(), ") /", commandName, ' ', subcommandName); //IO放最後 避免超過3秒限制
 	}
 
 	/**
@@ -208,4 +267,16 @@ public class CommandUsage extends ListenerAdapter
 		else //有參數
 			return JsonHandle.command(event.getUser().getIdLong(), commandName, argument);
 	}
-}
\ No newline at end of file
+
+	/**
+	 * The handler of a slash command and how to run it.
+	 *
+	 * @param command The handler.
+	 * @param blocking If the handler blocks, and should be run by {@link CommandExecutor}.
+	 * @since 2.2
+	 * @author Alex Cai
+	 */
+	private record Route(ICommand command, boolean blocking)
+	{
+	}
+}
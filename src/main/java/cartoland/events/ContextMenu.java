@@ -3,6 +3,7 @@ package cartoland.events;
 import cartoland.commands.QuoteCommand;
 import cartoland.utilities.FileHandle;
 import cartoland.utilities.IDs;
+import cartoland.utilities.UsageLogHandle;
 import net.dv8tion.jda.api.Permission;
 import net.dv8tion.jda.api.entities.Member;
 import net.dv8tion.jda.api.entities.Message;
@@ -37,6 +38,7 @@ public class ContextMenu extends ListenerAdapter
 		User user = event.getUser();
 		long userID = user.getIdLong();
 		String eventName = event.getName();
+		long begin = System.nanoTime();
 
 		switch (eventName)
 		{
@@ -94,7 +96,7 @@ public class ContextMenu extends ListenerAdapter
 				if (member == null)
 				{
 					event.reply("You should use this function in a server!").queue();
-					return;
+					break;
 				}
 
 				Message target = event.getTarget();
@@ -122,6 +124,7 @@ public class ContextMenu extends ListenerAdapter
 			}
 		}
 
+		UsageLogHandle.record(UsageLogHandle.CONTEXT_MENU, userID, eventName, null, System.nanoTime() - begin, UsageLogHandle.OK);
 		FileHandle.log(user.getEffectiveName(), '(', userID, ") used ", eventName);
 	}
 }
\ No newline at end of file
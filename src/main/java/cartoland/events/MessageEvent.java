@@ -1,6 +1,7 @@
 package cartoland.events;
 
 import cartoland.messages.*;
+import cartoland.utilities.LatencyHandle;
 import net.dv8tion.jda.api.entities.User;
 import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
 import net.dv8tion.jda.api.hooks.ListenerAdapter;
@@ -24,6 +25,13 @@ public class MessageEvent extends ListenerAdapter
 		new ShowcaseMessage(),
 		new TrapMessage()
 	};
+	private final LatencyHandle.Histogram[] histograms = new LatencyHandle.Histogram[messageEvents.length]; //和messageEvents的順序相同
+
+	public MessageEvent()
+	{
+		for (int i = 0; i < messageEvents.length; i++)
+			histograms[i] = LatencyHandle.histogram("message " + messageEvents[i].getClass().getSimpleName());
+	}
 
 	@Override
 	public void onMessageReceived(MessageReceivedEvent event)
@@ -32,8 +40,22 @@ public class MessageEvent extends ListenerAdapter
 		if (author.isBot() || author.isSystem()) //傳訊息的是機器人或系統
 			return; //不用執行
 
-		for (IMessage messageEvent : messageEvents)
-			if (messageEvent.messageCondition(event)) //讓類別自己檢測是否通過
+		for (int i = 0; i < messageEvents.length; i++)
+		{
+			IMessage messageEvent = messageEvents[i];
+			if (!messageEvent.messageCondition(event)) //讓類別自己檢測是否通過
+				continue;
+			long begin = System.nanoTime();
+			boolean failed = true;
+			try
+			{
 				messageEvent.messageProcess(event); //執行訊息事件
+				failed = false;
+			}
+			finally
+			{
+				histograms[i].record(System.nanoTime() - begin, failed);
+			}
+		}
 	}
 }
\ No newline at end of file
@@ -1,6 +1,5 @@
 package cartoland.events;
 
-import cartoland.utilities.CastToInstance;
 import cartoland.utilities.FileHandle;
 import cartoland.utilities.IDs;
 import cartoland.utilities.TimerHandle;
@@ -36,16 +35,10 @@ public class NewMember extends ListenerAdapter
 			"Set the language of this bot through </language:1102681768840138936> .";
 	private static final String ALL_MEMBERS = "serialize/all_members.ser";
 
-	@SuppressWarnings("unchecked")
-	private static final Set<Long> allMembers = CastToInstance.modifiableSet(FileHandle.deserialize(ALL_MEMBERS));
+	private static final Set<Long> allMembers = FileHandle.journaledSet(ALL_MEMBERS);
 
 	private static List<Long> allMembersList = Collections.emptyList();
 
-	static
-	{
-		FileHandle.registerSerialize(ALL_MEMBERS, allMembers);
-	}
-
 	public static List<Long> getAllMembersList()
 	{
 		if (allMembersList.size() != allMembers.size())
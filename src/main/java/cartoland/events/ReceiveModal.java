@@ -1,6 +1,7 @@
 package cartoland.events;
 
 import cartoland.utilities.JsonHandle;
+import cartoland.utilities.UsageLogHandle;
 import net.dv8tion.jda.api.entities.User;
 import net.dv8tion.jda.api.events.interaction.ModalInteractionEvent;
 import net.dv8tion.jda.api.hooks.ListenerAdapter;
@@ -26,15 +27,18 @@ public class ReceiveModal extends ListenerAdapter
 		if (!NEW_TITLE_MODAL_ID.equals(event.getModalId())) //不是要命名討論串
 			return;
 
+		long begin = System.nanoTime();
 		ModalMapping newTitle = event.getValue(NEW_TITLE_TEXT);
 		if (newTitle == null)
 		{
 			event.reply("Impossible, this is required!").setEphemeral(true).queue();
+			UsageLogHandle.record(UsageLogHandle.MODAL, userID, NEW_TITLE_MODAL_ID, null, System.nanoTime() - begin, UsageLogHandle.FAILED);
 			return;
 		}
 
 		String newTitleString = newTitle.getAsString(); //新標題
 		event.reply(JsonHandle.getString(userID, "rename_thread.changed", user.getEffectiveName(), newTitleString)).queue();
 		event.getGuildChannel().getManager().setName(newTitleString).queue();
+		UsageLogHandle.record(UsageLogHandle.MODAL, userID, NEW_TITLE_MODAL_ID, null, System.nanoTime() - begin, UsageLogHandle.OK);
 	}
 }
\ No newline at end of file
@@ -1,20 +1,23 @@
 package cartoland.messages;
 
+import cartoland.commands.JiraCommand;
 import cartoland.utilities.Algorithm;
 import cartoland.utilities.CommandBlocksHandle;
+import cartoland.utilities.FileHandle;
 import cartoland.utilities.IDs;
+import cartoland.utilities.JiraHandle;
 import cartoland.utilities.RegularExpressions;
 import net.dv8tion.jda.api.entities.Message;
+import net.dv8tion.jda.api.entities.MessageEmbed;
 import net.dv8tion.jda.api.entities.channel.concrete.Category;
 import net.dv8tion.jda.api.entities.emoji.Emoji;
 import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
 import net.dv8tion.jda.api.exceptions.InsufficientPermissionException;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
 
-import java.io.IOException;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
 
 /**
  * {@code GuildMessage} is a listener that triggers when a user types anything in any channel that the bot can access.
@@ -25,6 +28,7 @@ import java.util.Set;
  */
 public class GuildMessage implements IMessage
 {
+	private static final int MAX_LOOKUPS_PER_MESSAGE = Math.max(1, Integer.getInteger("cartoland.unfurlLookupsPerMessage", 3)); //可以用-Dcartoland.unfurlLookupsPerMessage=數量 調整
 	private final Set<Long> commandBlockCategories = Set.of(IDs.GENERAL_CATEGORY_ID, IDs.TECH_TALK_CATEGORY_ID, IDs.FORUM_CATEGORY_ID, IDs.VOICE_CATEGORY_ID);
 
 	/**
@@ -66,13 +70,9 @@ public class GuildMessage implements IMessage
 			message.addReaction(Emoji.fromCustom("learned", IDs.LEARNED_EMOJI_ID, false)).queue();
 			message.addReaction(Emoji.fromCustom("worship_a", IDs.WORSHIP_A_EMOJI_ID, true)).queue();
 		}
-		if (RegularExpressions.JIRA_BROWSE_LINK_REGEX.matcher(rawMessage).matches()) //是bug連結
-		{
-			//這些程式不寫在BotCanTalkChannelMessage裡 是為了讓所有頻道都能受惠
-			String replyMessage = jiraLink(rawMessage); //獲得回覆訊息
-			if (replyMessage != null) //如果尋找成功
-				message.reply(replyMessage).mentionRepliedUser(false).queue(); //回覆
-		}
+		//這些程式不寫在BotCanTalkChannelMessage裡 是為了讓所有頻道都能受惠
+		if (rawMessage.indexOf('-') != -1) //bug ID一定有- 大部分的訊息不用跑正規表達式
+			unfurlBugs(message, rawMessage);
 
 		Category category = message.getCategory(); //嘗試從訊息獲取類別
 		//在一般、技術討論區、創作展示或公眾區域類別 且不是在機器人專區
@@ -81,20 +81,61 @@ public class GuildMessage implements IMessage
 					.addBlocks(rawMessage.length() + 1 + message.getAttachments().size() + message.getStickers().size()); //說話加等級 +1當作加上\0 附加一個檔案或貼圖算1個
 	}
 
-	private String jiraLink(String link)
+	private void unfurlBugs(Message message, String rawMessage)
 	{
-		Document document; //HTML文件
+		Set<String> bugIDs = new LinkedHashSet<>(); //去除重複 但保持在訊息中出現的順序
+		Matcher bugMatcher = RegularExpressions.BUG_MENTION_REGEX.matcher(rawMessage);
+		while (bugIDs.size() < Message.MAX_EMBED_COUNT && bugMatcher.find()) //一則訊息最多10個embed
+			bugIDs.add(bugMatcher.group(1).toUpperCase(Locale.ROOT));
+		if (bugIDs.isEmpty())
+			return;
 
-		try
+		//一則訊息同時最多查MAX_LOOKUPS_PER_MESSAGE個 其餘的排隊 以免聊天把JiraClient的連線都佔走 讓/jira無法使用
+		//和/jira共用快取 查到之前不會卡住其他訊息
+		String[] pendingIDs = bugIDs.toArray(new String[0]);
+		List<CompletableFuture<JiraHandle.Issue>> lookups = new ArrayList<>(pendingIDs.length);
+		for (int i = 0; i < pendingIDs.length; i++)
+			lookups.add(new CompletableFuture<>());
+		AtomicInteger nextIndex = new AtomicInteger();
+		for (int i = 0; i < Math.min(MAX_LOOKUPS_PER_MESSAGE, pendingIDs.length); i++)
+			lookUpNext(pendingIDs, lookups, nextIndex);
+		CompletableFuture.allOf(lookups.toArray(new CompletableFuture<?>[0])).thenRun(() ->
 		{
-			document = Jsoup.connect(link).get(); //連線
-		}
-		catch (IOException e) //連線失敗就算了
+			List<MessageEmbed> embeds = new ArrayList<>(lookups.size());
+			int totalLength = 0;
+			for (CompletableFuture<JiraHandle.Issue> lookup : lookups)
+			{
+				JiraHandle.Issue issue = lookup.join(); //都已經完成了 不會等待
+				if (issue == null)
+					continue;
+				MessageEmbed embed = JiraCommand.bugEmbed(issue);
+				totalLength += embed.getLength();
+				if (totalLength > MessageEmbed.EMBED_MAX_LENGTH_BOT) //所有embed的字數加起來有上限
+					break;
+				embeds.add(embed);
+			}
+			if (!embeds.isEmpty()) //合併成一則回覆
+				message.replyEmbeds(embeds).mentionRepliedUser(false).queue();
+		}).exceptionally(exception -> //不要讓例外消失在future裡
 		{
+			Throwable cause = JiraHandle.cause(exception);
+			FileHandle.log(cause instanceof Exception unwrapped ? unwrapped : new RuntimeException(cause));
 			return null;
-		}
+		});
+	}
 
-		Element title = document.getElementById("summary-val"); //獲得標題
-		return title != null ? '[' + title.text() + "](" + link + ')' : null; //如果獲得成功就傳送標題文字
+	//查詢下一個還沒開始的bug 查完後再接著查下一個 所以同時進行的數量不會超過開始時呼叫的次數
+	private static void lookUpNext(String[] bugIDs, List<CompletableFuture<JiraHandle.Issue>> lookups, AtomicInteger nextIndex)
+	{
+		int index = nextIndex.getAndIncrement();
+		if (index >= bugIDs.length) //全部都開始查了
+			return;
+		JiraHandle.issue(bugIDs[index])
+				.exceptionally(exception -> null) //連線失敗或沒有這個bug就算了
+				.thenAccept(issue ->
+				{
+					lookups.get(index).complete(issue);
+					lookUpNext(bugIDs, lookups, nextIndex);
+				});
 	}
-}
\ No newline at end of file
+}
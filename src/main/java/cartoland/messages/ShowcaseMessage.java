@@ -23,6 +23,9 @@ public class ShowcaseMessage implements IMessage
 {
 	private final Set<Long> showcaseChannels = Set.of(IDs.DATAPACK_SHOWCASE_CHANNEL_ID, IDs.MAP_SHOWCASE_CHANNEL_ID, IDs.BUILDING_SHOWCASE_CHANNEL_ID,
 			IDs.MODEL_SHOWCASE_CHANNEL_ID, IDs.VIDEOS_AND_STREAMS_CHANNEL_ID, IDs.MAP_REVIEW_CHANNEL_ID);
+	private final int archiveThreadName = JsonHandle.keyID("archive_thread.name"); //每則展示訊息都要用 先算好編號
+	private final int renameThreadName = JsonHandle.keyID("rename_thread.name");
+	private final int showcaseThreadCreation = JsonHandle.keyID("showcase_thread.creation");
 
 	@Override
 	public boolean messageCondition(MessageReceivedEvent event)
@@ -37,11 +40,11 @@ public class ShowcaseMessage implements IMessage
 		long userID = author.getIdLong();
 		String name = author.getEffectiveName();
 
-		Button archiveButton = Button.success(IButton.ARCHIVE_THREAD, JsonHandle.getString(userID, "archive_thread.name")).withEmoji(Emoji.fromUnicode("📁"));
-		Button renameButton = Button.primary(IButton.RENAME_THREAD, JsonHandle.getString(userID, "rename_thread.name")).withEmoji(Emoji.fromUnicode("✏️"));
+		Button archiveButton = Button.success(IButton.ARCHIVE_THREAD, JsonHandle.getString(userID, archiveThreadName)).withEmoji(Emoji.fromUnicode("📁"));
+		Button renameButton = Button.primary(IButton.RENAME_THREAD, JsonHandle.getString(userID, renameThreadName)).withEmoji(Emoji.fromUnicode("✏️"));
 		event.getMessage()
 			.createThreadChannel(name + '(' + TimerHandle.getDateString() + ')')
-			.flatMap(thread -> thread.sendMessage(JsonHandle.getString(userID, "showcase_thread.creation", name)).addActionRow(archiveButton, renameButton))
+			.flatMap(thread -> thread.sendMessage(JsonHandle.getString(userID, showcaseThreadCreation, name)).addActionRow(archiveButton, renameButton))
 			.flatMap(Message::pin)
 			.queue();
 	}
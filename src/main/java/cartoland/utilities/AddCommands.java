@@ -500,7 +500,10 @@ public final class AddCommands
 											.setNameLocalization(CHINESE_CHINA, "小时"),
 										new Command.Choice("Double Hour", "double_hour")
 											.setNameLocalization(CHINESE_TAIWAN, "時辰")
-											.setNameLocalization(CHINESE_CHINA, "时辰")))),
+											.setNameLocalization(CHINESE_CHINA, "时辰"))),
+						new SubcommandData(AdminCommand.STATS, "Show how long every handler takes")
+							.setDescriptionLocalization(CHINESE_TAIWAN, "顯示每個處理程序花費的時間")
+							.setDescriptionLocalization(CHINESE_CHINA, "显示每个处理程序花费的时间")),
 			Commands.slash(SCHEDULE, "Schedule a message to be send to a channel")
 					.setDescriptionLocalization(CHINESE_TAIWAN, "排程一則訊息發送至一個頻道")
 					.setDescriptionLocalization(CHINESE_CHINA, "排程一则信息发送至一个频道")
@@ -12,13 +12,7 @@ public final class AnonymousHandle
 {
 	private static final String PRIVATE_TO_UNDERGROUND_MAP = "serialize/private_to_underground.ser";
 
-	@SuppressWarnings("unchecked")
-	private static final Map<Long, Long> privateToUnderground = CastToInstance.modifiableMap(FileHandle.deserialize(PRIVATE_TO_UNDERGROUND_MAP));
-
-	static
-	{
-		FileHandle.registerSerialize(PRIVATE_TO_UNDERGROUND_MAP, privateToUnderground);
-	}
+	private static final Map<Long, Long> privateToUnderground = FileHandle.journaledMap(PRIVATE_TO_UNDERGROUND_MAP);
 
 	public static void addConnection(long privateMessageID, long undergroundMessageID)
 	{
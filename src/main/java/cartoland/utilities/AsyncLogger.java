@@ -0,0 +1,520 @@
+package cartoland.utilities;
+
+import cartoland.Cartoland;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * {@code AsyncLogger} is the logger behind {@link FileHandle#log(Object...)}, {@link FileHandle#dmLog(Object...)} and
+ * {@link FileHandle#log(Exception)}. It is a bounded multi-producer single-consumer ring buffer: a producer claims a
+ * slot with one CAS and stores the timestamp and a copy of its argument array, then a single background thread formats
+ * the entries and writes them to the files with NIO. Producers never format anything, and take a lock only when they
+ * have to wait for a full buffer.
+ * <p>
+ * The writer appends the buffered lines to the day files ({@code logs/yyyy-MM-dd} and {@code dms/yyyy-MM-dd}) whenever
+ * the buffers cross a size threshold or the flush interval elapsed, through {@link FileChannel}s that stay open for the
+ * whole day. Each line goes to the file of the day it was logged. When the day changes, the files of the previous day
+ * are compressed into {@code .gz} archives on a background thread.
+ * <p>
+ * Every slot has a sequence number. A slot whose sequence equals the claimed position is free, and a slot whose
+ * sequence is one more than the position is published. When the buffer is full, the {@link Backpressure} of the call
+ * decides whether the entry is dropped or the producer waits. A waiting producer sleeps on a {@link Condition} that the
+ * writer signals after freeing a slot.
+ *
+ * @since 2.2
+ * @author Alex Cai
+ */
+final class AsyncLogger
+{
+	/**
+	 * What a producer does when the ring buffer is full.
+	 *
+	 * @since 2.2
+	 * @author Alex Cai
+	 */
+	enum Backpressure
+	{
+		/**
+		 * Discard the entry and count it. The writer logs how many entries were dropped.
+		 */
+		DROP,
+		/**
+		 * Sleep until the writer frees a slot.
+		 */
+		BLOCK
+	}
+
+	private static final byte LOG = 0;
+	private static final byte DM = 1;
+	private static final byte EXCEPTION = 2;
+	private static final byte FLUSH = 3;
+
+	private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100L); //沒有東西可寫時 最多睡多久
+	private static final ZoneOffset UTC_8 = ZoneOffset.ofHours(8);
+	private static final int SECONDS_PER_DAY = 24 * 60 * 60;
+	private static final String LOGS_DIRECTORY = "logs/";
+	private static final String DMS_DIRECTORY = "dms/";
+	private static final PathMatcher DAY_FILE = FileSystems.getDefault().getPathMatcher("regex:\\d{4}-\\d{2}-\\d{2}");
+
+	private final int mask;
+	private final AtomicLongArray sequences;
+	private final long[] times;
+	private final byte[] kinds;
+	private final Object[] payloads;
+	private final AtomicLong tail = new AtomicLong(); //下一個可以被生產者取得的位置
+	private final LongAdder dropped = new LongAdder();
+	private final Thread writer;
+	private volatile boolean writerParked;
+	private final ReentrantLock spaceLock = new ReentrantLock();
+	private final Condition spaceFreed = spaceLock.newCondition(); //有格子被清出來了
+	private volatile int waitingProducers; //只在持有spaceLock時修改
+	private final int flushThreshold; //緩衝區超過這麼多字元就寫入
+	private final long flushIntervalNanos; //距離上次寫入超過這麼久就寫入
+
+	//壓縮前一天的檔案
+	private final ExecutorService archiver = Executors.newSingleThreadExecutor(runnable ->
+	{
+		Thread thread = new Thread(runnable, "Log Archiver");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	//以下只會被寫入的執行緒使用
+	private long head; //下一個要被寫入的位置
+	private long reportedDropped;
+	private final StringBuilder logString = new StringBuilder();
+	private final StringBuilder dmString = new StringBuilder();
+	private long bufferDay = -1L; //緩衝區內的紀錄是哪一天的 從1970年1月1日開始算
+	private long channelDay = -1L; //目前開啟的檔案是哪一天的
+	private FileChannel logChannel;
+	private FileChannel dmChannel;
+	private long lastFlushNanos = System.nanoTime();
+
+	/**
+	 * Create a logger and start its writer thread. Day files older than today are archived in the background.
+	 *
+	 * @param capacity The number of slots, must be a power of 2.
+	 * @param flushThreshold Write the buffers when they have more characters than this.
+	 * @param flushInterval Write the buffers when this long has passed since the last write.
+	 * @param unit The unit of {@code flushInterval}.
+	 */
+	AsyncLogger(int capacity, int flushThreshold, long flushInterval, TimeUnit unit)
+	{
+		if (Integer.bitCount(capacity) != 1)
+			throw new IllegalArgumentException("Capacity must be a power of 2: " + capacity);
+		mask = capacity - 1;
+		sequences = new AtomicLongArray(capacity);
+		for (int i = 0; i < capacity; i++)
+			sequences.set(i, i); //每個格子一開始都是空的
+		times = new long[capacity];
+		kinds = new byte[capacity];
+		payloads = new Object[capacity];
+		this.flushThreshold = flushThreshold;
+		flushIntervalNanos = unit.toNanos(flushInterval);
+
+		long today = dayOf(System.currentTimeMillis());
+		archiver.execute(() -> //開機前留下的舊檔案
+		{
+			archiveOldFiles(LOGS_DIRECTORY, today);
+			archiveOldFiles(DMS_DIRECTORY, today);
+		});
+
+		writer = new Thread(this::drain, "Logger");
+		writer.setDaemon(true); //不要因為它而無法結束程式
+		writer.start();
+	}
+
+	boolean log(Object[] outputs, Backpressure backpressure)
+	{
+		return publish(LOG, outputs.clone(), backpressure); //呼叫者可能會重複使用陣列
+	}
+
+	boolean dmLog(Object[] outputs, Backpressure backpressure)
+	{
+		return publish(DM, outputs.clone(), backpressure);
+	}
+
+	boolean log(Exception exception, Backpressure backpressure)
+	{
+		return publish(EXCEPTION, exception, backpressure);
+	}
+
+	/**
+	 * Wait until every entry that was published before this call was written to the files.
+	 */
+	void flush()
+	{
+		if (Thread.currentThread() == writer) //寫入的執行緒不能等待自己
+			return;
+		CountDownLatch written = new CountDownLatch(1);
+		publish(FLUSH, written, Backpressure.BLOCK);
+		boolean interrupted = false;
+		while (true)
+		{
+			try
+			{
+				written.await();
+				break;
+			}
+			catch (InterruptedException exception)
+			{
+				interrupted = true; //一定要等到寫入完成 稍後再恢復中斷狀態
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+	}
+
+	long dropped()
+	{
+		return dropped.sum();
+	}
+
+	private boolean publish(byte kind, Object payload, Backpressure backpressure)
+	{
+		long time = System.currentTimeMillis();
+		long position;
+		int index;
+		boolean interrupted = false;
+		while (true)
+		{
+			position = tail.get();
+			index = (int) position & mask;
+			long difference = sequences.getAcquire(index) - position;
+			if (difference == 0L) //格子是空的
+			{
+				if (tail.compareAndSet(position, position + 1L))
+					break; //取得格子
+			}
+			else if (difference < 0L) //滿了
+			{
+				if (backpressure == Backpressure.DROP || Thread.currentThread() == writer)
+				{
+					dropped.increment();
+					return false;
+				}
+				wakeWriter();
+				interrupted |= awaitSpace(index, position); //等待寫入的執行緒清出空間
+			}
+			//其他的生產者先取得了格子 重試
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt(); //等待時被中斷 恢復中斷狀態
+
+		times[index] = time;
+		kinds[index] = kind;
+		payloads[index] = payload;
+		sequences.setRelease(index, position + 1L); //發布
+		if (kind == FLUSH || writerParked) //FLUSH正在等待 不要讓它睡滿PARK_NANOS
+			wakeWriter();
+		return true;
+	}
+
+	private void wakeWriter()
+	{
+		LockSupport.unpark(writer);
+	}
+
+	/**
+	 * Sleep until the slot at {@code index} is no longer behind {@code position}, which means the writer freed it.
+	 *
+	 * @return true if the thread was interrupted while waiting.
+	 */
+	private boolean awaitSpace(int index, long position)
+	{
+		boolean interrupted = false;
+		spaceLock.lock();
+		try
+		{
+			waitingProducers++; //先登記再檢查 寫入的執行緒先清出格子再檢查登記 所以不會錯過通知
+			while (sequences.get(index) - position < 0L)
+			{
+				try
+				{
+					spaceFreed.await();
+				}
+				catch (InterruptedException exception)
+				{
+					interrupted = true; //一定要寫入紀錄 稍後再恢復中斷狀態
+				}
+			}
+		}
+		finally
+		{
+			waitingProducers--;
+			spaceLock.unlock();
+		}
+		return interrupted;
+	}
+
+	private void signalProducers()
+	{
+		spaceLock.lock();
+		try
+		{
+			spaceFreed.signalAll();
+		}
+		finally
+		{
+			spaceLock.unlock();
+		}
+	}
+
+	private void drain()
+	{
+		while (true)
+		{
+			int index = (int) head & mask;
+			if (sequences.getAcquire(index) != head + 1L) //還沒有發布的紀錄
+			{
+				if (System.nanoTime() - lastFlushNanos >= flushIntervalNanos) //閒置時 定期寫入
+					writeFiles(false);
+				writerParked = true;
+				if (sequences.getAcquire(index) != head + 1L) //再確認一次 以免錯過喚醒
+					LockSupport.parkNanos(this, PARK_NANOS);
+				writerParked = false;
+				continue;
+			}
+
+			long time = times[index];
+			byte kind = kinds[index];
+			Object payload = payloads[index];
+			payloads[index] = null; //讓參數能被回收
+			sequences.set(index, head + mask + 1L); //格子可以在下一輪被使用了
+			head++;
+			if (waitingProducers != 0) //有生產者在等待空間
+				signalProducers();
+
+			try
+			{
+				write(time, kind, payload);
+			}
+			catch (RuntimeException exception) //例如參數的toString拋出例外 寫入的執行緒不能因此停止 否則緩衝區再也不會被清空
+			{
+				//noinspection CallToPrintStackTrace
+				exception.printStackTrace();
+				appendTime(logString, time).append("\t(failed to log an entry: ").append(exception.getClass().getName()).append(")\n");
+			}
+			finally
+			{
+				if (kind == FLUSH)
+					((CountDownLatch) payload).countDown(); //就算寫入失敗 也不能讓flush永遠等待
+			}
+		}
+	}
+
+	/**
+	 * Format one entry into the buffers, and write the buffers to the files if needed.
+	 */
+	private void write(long time, byte kind, Object payload)
+	{
+		if (kind != FLUSH)
+		{
+			long day = dayOf(time);
+			if (day > bufferDay) //換日了 先把前一天的紀錄寫進前一天的檔案 晚到的前一天紀錄就寫進今天的檔案
+			{
+				if (bufferDay != -1L)
+					writeFiles(false);
+				bufferDay = day;
+			}
+		}
+
+		long droppedNow = dropped.sum();
+		if (droppedNow != reportedDropped)
+		{
+			appendTime(logString, time).append("\t(").append(droppedNow - reportedDropped).append(" log entries dropped)\n");
+			reportedDropped = droppedNow;
+		}
+
+		switch (kind)
+		{
+			case LOG -> append(logString, time, (Object[]) payload);
+			case DM -> append(dmString, time, (Object[]) payload); //專為私訊的log
+			case EXCEPTION ->
+			{
+				appendTime(logString, time).append("\t\n");
+				for (StackTraceElement trace : ((Exception) payload).getStackTrace())
+					logString.append('\t').append(trace).append('\n');
+			}
+			case FLUSH -> writeFiles(true); //在finally裡通知flush
+		}
+
+		if (logString.length() + dmString.length() >= flushThreshold || System.nanoTime() - lastFlushNanos >= flushIntervalNanos)
+			writeFiles(false);
+	}
+
+	private static long dayOf(long time)
+	{
+		return Math.floorDiv(Math.floorDiv(time, 1000L) + UTC_8.getTotalSeconds(), SECONDS_PER_DAY);
+	}
+
+	private static void append(StringBuilder logger, long time, Object[] outputs)
+	{
+		//時間 內容
+		int start = logger.length();
+		appendTime(logger, time).append('\t');
+		try
+		{
+			for (Object output : outputs)
+			{
+				if (output instanceof Character c) //StringBuilder面對char時不會套用String.valueOf
+					logger.append(c.charValue());
+				else
+					logger.append(output);
+			}
+		}
+		catch (RuntimeException exception)
+		{
+			logger.setLength(start); //不要留下寫到一半的行
+			throw exception;
+		}
+		logger.append('\n');
+	}
+
+	//HH:mm:ss 不經過String.format
+	private static StringBuilder appendTime(StringBuilder logger, long time)
+	{
+		int secondOfDay = Math.floorMod(Math.floorDiv(time, 1000L) + UTC_8.getTotalSeconds(), SECONDS_PER_DAY);
+		return appendTwoDigits(appendTwoDigits(appendTwoDigits(logger, secondOfDay / 3600).append(':'), secondOfDay / 60 % 60).append(':'), secondOfDay % 60);
+	}
+
+	private static StringBuilder appendTwoDigits(StringBuilder logger, int value)
+	{
+		return logger.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
+	}
+
+	/**
+	 * Append the buffers to the files of {@link #bufferDay}. If the open files belong to another day, they are closed
+	 * and archived first.
+	 *
+	 * @param force If the files should be forced to the disk, used by {@link #flush()}.
+	 */
+	private void writeFiles(boolean force)
+	{
+		lastFlushNanos = System.nanoTime();
+		if (bufferDay == -1L || logString.isEmpty() && dmString.isEmpty()) //沒有東西要寫
+			return;
+		try
+		{
+			if (channelDay != bufferDay) //第一次寫入 或是換日了
+				openDayFiles();
+			writeFile(logChannel, logString, force);
+			writeFile(dmChannel, dmString, force);
+		}
+		catch (IOException exception)
+		{
+			//noinspection CallToPrintStackTrace
+			exception.printStackTrace();
+			if (Cartoland.getJDA() != null)
+				Cartoland.getJDA().shutdownNow();
+		}
+		catch (RuntimeException exception) //寫入的執行緒不能因此停止 下次再試
+		{
+			//noinspection CallToPrintStackTrace
+			exception.printStackTrace();
+		}
+	}
+
+	private void openDayFiles() throws IOException
+	{
+		closeDayFiles();
+		if (channelDay != -1L) //前一天的檔案不會再被寫入了
+		{
+			String oldDate = LocalDate.ofEpochDay(channelDay).toString();
+			archiver.execute(() ->
+			{
+				archive(Paths.get(LOGS_DIRECTORY + oldDate));
+				archive(Paths.get(DMS_DIRECTORY + oldDate));
+			});
+		}
+
+		String date = LocalDate.ofEpochDay(bufferDay).toString();
+		//一定要事先備好logs資料夾和dms資料夾
+		logChannel = FileChannel.open(Paths.get(LOGS_DIRECTORY + date), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		dmChannel = FileChannel.open(Paths.get(DMS_DIRECTORY + date), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		channelDay = bufferDay;
+	}
+
+	private void closeDayFiles() throws IOException
+	{
+		if (logChannel != null)
+			logChannel.close();
+		if (dmChannel != null)
+			dmChannel.close();
+	}
+
+	private static void writeFile(FileChannel channel, StringBuilder content, boolean force) throws IOException
+	{
+		if (!content.isEmpty())
+		{
+			ByteBuffer buffer = StandardCharsets.UTF_8.encode(content.toString());
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+			content.setLength(0); //清空暫存
+		}
+		if (force)
+			channel.force(false);
+	}
+
+	private static void archiveOldFiles(String directory, long today)
+	{
+		String todayString = LocalDate.ofEpochDay(today).toString();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(Paths.get(directory)))
+		{
+			for (Path file : files)
+				if (DAY_FILE.matches(file.getFileName()) && !todayString.equals(file.getFileName().toString()))
+					archive(file);
+		}
+		catch (IOException exception)
+		{
+			//noinspection CallToPrintStackTrace
+			exception.printStackTrace(); //不能呼叫log 以免在紀錄器裡等待紀錄器
+		}
+	}
+
+	//把一天的檔案壓縮成.gz 如果已經有.gz了 就附加在後面 gzip可以接受多個串接的成員
+	private static void archive(Path file)
+	{
+		if (!Files.exists(file))
+			return;
+		Path archive = file.resolveSibling(file.getFileName() + ".gz");
+		try (OutputStream output = new GZIPOutputStream(Files.newOutputStream(archive, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)))
+		{
+			Files.copy(file, output);
+		}
+		catch (IOException exception)
+		{
+			//noinspection CallToPrintStackTrace
+			exception.printStackTrace();
+			return; //保留原本的檔案
+		}
+
+		try
+		{
+			Files.delete(file);
+		}
+		catch (IOException exception)
+		{
+			//noinspection CallToPrintStackTrace
+			exception.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,69 @@
+package cartoland.utilities;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * {@code CachedClock} is a coarse clock of UTC+8 with a precision of one second. The first reader of each second renders
+ * the time and the date into strings and publishes them as an immutable {@link Tick} through a volatile reference, so
+ * every other reader of that second never allocates or formats anything. Can not be instantiated or inherited.
+ *
+ * @since 2.2
+ * @author Alex Cai
+ */
+public final class CachedClock
+{
+	private CachedClock()
+	{
+		throw new AssertionError(IDs.YOU_SHALL_NOT_ACCESS);
+	}
+
+	/**
+	 * The rendered time of one second.
+	 *
+	 * @param epochSecond Seconds from 1970-01-01T00:00:00Z.
+	 * @param compactTimeString {@code HHmmss}, for file names.
+	 * @param dateString {@code yyyy-MM-dd}
+	 * @since 2.2
+	 * @author Alex Cai
+	 */
+	public record Tick(long epochSecond, String compactTimeString, String dateString)
+	{
+	}
+
+	private static final ZoneOffset UTC_8 = ZoneOffset.ofHours(8);
+
+	private static volatile Tick tick = render(System.currentTimeMillis() / 1000L);
+
+	/**
+	 * The tick of the current second.
+	 *
+	 * @return The rendered time.
+	 * @since 2.2
+	 * @author Alex Cai
+	 */
+	public static Tick now()
+	{
+		Tick current = tick;
+		long epochSecond = System.currentTimeMillis() / 1000L;
+		if (epochSecond != current.epochSecond) //這一秒第一次被讀取 同時讀取的執行緒產生的結果都一樣 誰寫入都可以
+			tick = current = render(epochSecond);
+		return current;
+	}
+
+	private static Tick render(long epochSecond)
+	{
+		LocalDateTime now = LocalDateTime.ofEpochSecond(epochSecond, 0, UTC_8);
+		char[] time = new char[6];
+		putTwoDigits(time, 0, now.getHour());
+		putTwoDigits(time, 2, now.getMinute());
+		putTwoDigits(time, 4, now.getSecond());
+		return new Tick(epochSecond, new String(time), now.toLocalDate().toString()); //HHmmss yyyy-MM-dd
+	}
+
+	private static void putTwoDigits(char[] chars, int index, int value)
+	{
+		chars[index] = (char) ('0' + value / 10);
+		chars[index + 1] = (char) ('0' + value % 10);
+	}
+}
@@ -0,0 +1,179 @@
+package cartoland.utilities;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@code CircuitBreaker} stops calls to a remote service that keeps failing, so that callers fail at once instead of
+ * each waiting for its own timeout. After {@code failureThreshold} failures in a row the circuit opens and every call
+ * is rejected. After {@code openMillis} milliseconds one call is let through as a probe: if it succeeds the circuit
+ * closes, otherwise it opens again. Both can be changed with {@code -Dcartoland.circuitBreaker.<name>.failures} and
+ * {@code -Dcartoland.circuitBreaker.<name>.openMillis}.
+ * <p>
+ * Every permitted call gets a permit, which is passed back with its result. The probe gets a token of its own, and only
+ * the result of that token moves the circuit out of half-open. Calls let through before the circuit opened may finish
+ * while it is half-open, and they can't close or reopen it.
+ * <p>
+ * The state is a single {@link AtomicInteger} changed with compare and set, so only one thread performs each
+ * transition. Every transition is logged and counted, and {@link #render()} shows the counters.
+ *
+ * @since 2.2
+ * @author Alex Cai
+ */
+public final class CircuitBreaker
+{
+	private static final int CLOSED = 0;
+	private static final int OPEN = 1;
+	private static final int HALF_OPEN = 2; //只放一個探測的呼叫
+	private static final String[] STATE_NAMES = { "closed", "open", "half-open" };
+
+	/**
+	 * The permit of a rejected call.
+	 */
+	public static final long REJECTED = -1L;
+	private static final long REGULAR = 0L; //不是探測的呼叫 探測的代號從1開始
+
+	private static final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+	private final String name;
+	private final int failureThreshold;
+	private final long openNanos;
+	private final AtomicInteger state = new AtomicInteger(CLOSED);
+	private final AtomicInteger consecutiveFailures = new AtomicInteger();
+	private volatile long openedAt; //在state變成OPEN之前寫入
+	private final AtomicLong probeCount = new AtomicLong();
+	private volatile long probeToken = REJECTED; //目前的探測 在state變成HALF_OPEN之後寫入
+	private final LongAdder opened = new LongAdder();
+	private final LongAdder halfOpened = new LongAdder();
+	private final LongAdder closed = new LongAdder();
+	private final LongAdder rejected = new LongAdder();
+
+	/**
+	 * Create the circuit breaker of a remote service.
+	 *
+	 * @param name The name of the service, such as {@code jira}.
+	 * @param failureThreshold How many failures in a row open the circuit.
+	 * @param openMillis How many milliseconds the circuit stays open before a probe.
+	 * @since 2.2
+	 * @author Alex Cai
+	 */
+	public CircuitBreaker(String name, int failureThreshold, long openMillis)
+	{
+		this.name = name;
+		this.failureThreshold = Math.max(1, Integer.getInteger("cartoland.circuitBreaker." + name + ".failures", failureThreshold));
+		openNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1L, Long.getLong("cartoland.circuitBreaker." + name + ".openMillis", openMillis)));
+		breakers.put(name, this);
+	}
+
+	/**
+	 * Ask for permission to call the service. A caller that gets permission must report the result with
+	 * {@link #onSuccess(long)} or {@link #onFailure(long)} and the permit, or the circuit may stay half-open.
+	 *
+	 * @return {@link #REJECTED} if the call can't be made, otherwise the permit of the call.
+	 * @since 2.2
+	 * @author Alex Cai
+	 */
+	public long tryAcquire()
+	{
+		int current = state.get();
+		if (current == CLOSED)
+			return REGULAR;
+		//OPEN已經夠久 第一個搶到的人去探測 HALF_OPEN時探測還沒結束 其他人都拒絕
+		if (current == OPEN && System.nanoTime() - openedAt >= openNanos && transition(OPEN, HALF_OPEN))
+		{
+			long token = probeCount.incrementAndGet();
+			probeToken = token; //搶到的人才寫入 否則搶輸的人可能蓋掉探測的代號
+			return token;
+		}
+		rejected.increment();
+		return REJECTED;
+	}
+
+	/**
+	 * Whether a permit is the probe of a half-open circuit.
+	 *
+	 * @param permit The permit from {@link #tryAcquire()}.
+	 * @return true if the call is the probe.
+	 * @since 2.2
+	 * @author Alex Cai
+	 */
+	public static boolean isProbe(long permit)
+	{
+		return permit > REGULAR;
+	}
+
+	/**
+	 * Report that a call succeeded, which closes the circuit if it was the probe.
+	 *
+	 * @param permit The permit from {@link #tryAcquire()}.
+	 * @since 2.2
+	 * @author Alex Cai
+	 */
+	public void onSuccess(long permit)
+	{
+		consecutiveFailures.set(0);
+		if (isProbe(permit) && permit == probeToken)
+			transition(HALF_OPEN, CLOSED);
+	}
+
+	/**
+	 * Report that a call failed or timed out, which opens the circuit if it was the probe, or if there have been
+	 * too many failures in a row.
+	 *
+	 * @param permit The permit from {@link #tryAcquire()}.
+	 * @since 2.2
+	 * @author Alex Cai
+	 */
+	public void onFailure(long permit)
+	{
+		if (isProbe(permit))
+		{
+			if (permit != probeToken) //不是目前的探測
+				return;
+			openedAt = System.nanoTime();
+			transition(HALF_OPEN, OPEN); //探測失敗 再等一段時間
+		}
+		else if (state.get() == CLOSED && consecutiveFailures.incrementAndGet() >= failureThreshold)
+		{
+			openedAt = System.nanoTime();
+			if (transition(CLOSED, OPEN))
+				consecutiveFailures.set(0);
+		}
+	}
+
+	/**
+	 * Render the state and transitions of every circuit breaker.
+	 *
+	 * @return One line for each service, sorted by name.
+	 * @since 2.2
+	 * @author Alex Cai
+	 */
+	public static String render()
+	{
+		StringBuilder builder = new StringBuilder("```\n");
+		for (CircuitBreaker breaker : new TreeMap<>(breakers).values())
+			builder.append(String.format("%-8s %-9s opened %6d half-opened %6d closed %6d rejected %8d\n", breaker.name,
+					STATE_NAMES[breaker.state.get()], breaker.opened.sum(), breaker.halfOpened.sum(), breaker.closed.sum(), breaker.rejected.sum()));
+		return builder.append("```").toString();
+	}
+
+	private boolean transition(int from, int to)
+	{
+		if (!state.compareAndSet(from, to)) //別的執行緒已經改過了
+			return false;
+		LongAdder transitions = switch (to)
+		{
+			case OPEN -> opened;
+			case HALF_OPEN -> halfOpened;
+			default -> closed;
+		};
+		transitions.increment();
+		FileHandle.log("Circuit breaker ", name, ": ", STATE_NAMES[from], " -> ", STATE_NAMES[to]);
+		return true;
+	}
+}
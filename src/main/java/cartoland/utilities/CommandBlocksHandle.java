@@ -5,11 +5,18 @@ import net.dv8tion.jda.api.JDA;
 import net.dv8tion.jda.api.entities.Guild;
 import net.dv8tion.jda.api.entities.Role;
 
-import java.io.Serial;
-import java.io.Serializable;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
 
 /**
  * {@code CommandBlocksHandle} is a utility class that handles command blocks of users. Command blocks is a
@@ -27,22 +34,16 @@ public final class CommandBlocksHandle
 	}
 
 	public static boolean changed = true; //清單是否更改過 用於決定/lottery ranking時是否重新排序
-	private static final String LOTTERY_DATA_FILE_NAME = "serialize/lottery_data.ser";
+	private static final String LOTTERY_DATA_FILE_NAME = "serialize/lottery_data.bin";
+	private static final String LEGACY_LOTTERY_DATA_FILE_NAME = "serialize/lottery_data.ser"; //舊的Java串聯化格式 只會在遷移時讀取
 	private static final long GAMBLE_ROLE_MIN = 100000L;
 
-	//會有unchecked assignment的警告 but I did it anyway
-	@SuppressWarnings("unchecked")
-	private static final Map<Long, LotteryData> lotteryDataMap = CastToInstance.modifiableMap(FileHandle.deserialize(LOTTERY_DATA_FILE_NAME));
+	private static final Map<Long, LotteryData> lotteryDataMap = FileHandle.journaledMap(LOTTERY_DATA_FILE_NAME, new LotteryDataCodec());
 
 	public static final List<LotteryData> lotteryDataList = new ArrayList<>(lotteryDataMap.values()); //將map轉換為array list
 	//因為每次修改的是LotteryData的內容 而不是參考本身 所以可以事先建好
 	//它唯一的用處是ranking時的排序 相對來說風險比較小 因此直接設成public
 
-	static
-	{
-		FileHandle.registerSerialize(LOTTERY_DATA_FILE_NAME, lotteryDataMap);
-	}
-
 	/**
 	 * Get the lottery data of a user from ID.
 	 *
@@ -61,7 +62,7 @@ public final class CommandBlocksHandle
 		LotteryData newUser = new LotteryData(userID); //建立新資料
 		lotteryDataMap.put(userID, newUser); //放入這名玩家
 		lotteryDataList.add(newUser); //放入這名玩家
-		Cartoland.getJDA().retrieveUserById(userID).queue(user -> newUser.name = user.getEffectiveName()); //初始化新資料
+		Cartoland.getJDA().retrieveUserById(userID).queue(user -> newUser.setName(user.getEffectiveName())); //初始化新資料
 		return newUser; //絕不回傳null
 	}
 
@@ -69,10 +70,222 @@ public final class CommandBlocksHandle
 	{
 		JDA jda = Cartoland.getJDA();
 		for (Map.Entry<Long, LotteryData> idAndData : lotteryDataMap.entrySet()) //找到每位使用者
-			jda.retrieveUserById(idAndData.getKey()).queue(user -> idAndData.getValue().name = user.getEffectiveName()); //更新名字
+			jda.retrieveUserById(idAndData.getKey()).queue(user -> idAndData.getValue().setName(user.getEffectiveName())); //更新名字
 		changed = true;
 	}
 
+	/**
+	 * {@code LotteryDataCodec} is the binary format of {@link #lotteryDataMap}, which replaces Java serialization.
+	 * The file starts with a header: {@code [int magic][int version][int record count]}, followed by fixed-width
+	 * records of {@link #RECORD_BYTES} bytes, then a string table of names: {@code [int count]} and
+	 * {@code [int length][UTF-8 bytes]} for each name. A record refers to its name by the index in the string table,
+	 * or -1 if the user doesn't have a name yet. If the file doesn't exist, the old {@code lottery_data.ser} and its
+	 * journals will be migrated once. A corrupt file is moved to {@code lottery_data.bin.corrupt}, and the data falls
+	 * back to the old file, or to nothing if there is no old file.
+	 *
+	 * @since 2.2
+	 * @author Alex Cai
+	 */
+	static final class LotteryDataCodec implements JournaledStore.Codec
+	{
+		private static final int MAGIC = 0x434C5444; //"CLTD"
+		private static final int VERSION = 1;
+		private static final int HEADER_BYTES = Integer.BYTES * 3;
+		//userID, blocks, 8個勝敗場數, lastClaimSecond, streak, 名字的索引
+		private static final int RECORD_BYTES = Long.BYTES + Long.BYTES + Integer.BYTES * 8 + Long.BYTES + Integer.BYTES + Integer.BYTES;
+		private static final int NO_NAME = -1;
+
+		@Override
+		public Object decode(String fileName) throws IOException
+		{
+			Path path = Paths.get(fileName);
+			if (!Files.exists(path)) //還沒有二進位檔
+				return migrate(fileName);
+
+			try
+			{
+				return read(path);
+			}
+			catch (IOException | BufferUnderflowException | IndexOutOfBoundsException exception) //檔案損毀了
+			{
+				//保留損毀的檔案 否則下一次快照就會把它覆蓋掉
+				Path corruptPath = Paths.get(fileName + ".corrupt");
+				Files.move(path, corruptPath, StandardCopyOption.REPLACE_EXISTING);
+				FileHandle.log("Can't read ", fileName, " (", exception, "), moved it to ", corruptPath, " and fell back to ", LEGACY_LOTTERY_DATA_FILE_NAME);
+				return migrate(fileName); //沒有舊檔案的話就是空的
+			}
+		}
+
+		private static Map<Long, LotteryData> read(Path path) throws IOException
+		{
+			try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+			{
+				MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0L, channel.size());
+				if (buffer.getInt() != MAGIC)
+					throw new IOException(path + " is not a lottery data file");
+				int version = buffer.getInt();
+				if (version != VERSION)
+					throw new IOException(path + " has unknown version " + version);
+				int count = buffer.getInt();
+				if (count < 0 || count > (buffer.limit() - HEADER_BYTES) / RECORD_BYTES) //不要照著損毀的數量移動位置
+					throw new IOException(path + " has corrupt record count " + count);
+
+				//先讀字串表 才能在讀紀錄時直接放入名字
+				buffer.position(HEADER_BYTES + count * RECORD_BYTES);
+				int nameCount = buffer.getInt();
+				if (nameCount < 0 || nameCount > buffer.remaining() / Integer.BYTES) //每個名字至少有長度
+					throw new IOException(path + " has corrupt name count " + nameCount);
+				String[] names = new String[nameCount];
+				for (int i = 0; i < names.length; i++)
+				{
+					int nameLength = buffer.getInt();
+					if (nameLength < 0 || nameLength > buffer.remaining())
+						throw new IOException(path + " has corrupt name length " + nameLength);
+					byte[] utf8 = new byte[nameLength];
+					buffer.get(utf8);
+					names[i] = new String(utf8, StandardCharsets.UTF_8);
+				}
+
+				buffer.position(HEADER_BYTES);
+				Map<Long, LotteryData> map = HashMap.newHashMap(count);
+				for (int i = 0; i < count; i++)
+				{
+					LotteryData data = readRecord(buffer);
+					int nameIndex = buffer.getInt();
+					data.name = nameIndex == NO_NAME ? null : names[nameIndex]; //索引損毀時會拋出ArrayIndexOutOfBoundsException
+					map.put(data.userID, data);
+				}
+				return map;
+			}
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public byte[] encode(Object content)
+		{
+			Collection<LotteryData> allData = ((Map<Long, LotteryData>) content).values();
+
+			//建立字串表 同樣的名字只會存一次
+			Map<String, Integer> nameIndices = new HashMap<>();
+			List<byte[]> names = new ArrayList<>();
+			int namesBytes = Integer.BYTES;
+			for (LotteryData data : allData)
+			{
+				if (data.name == null || nameIndices.containsKey(data.name))
+					continue;
+				byte[] utf8 = data.name.getBytes(StandardCharsets.UTF_8);
+				nameIndices.put(data.name, names.size());
+				names.add(utf8);
+				namesBytes += Integer.BYTES + utf8.length;
+			}
+
+			ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + allData.size() * RECORD_BYTES + namesBytes);
+			buffer.putInt(MAGIC).putInt(VERSION).putInt(allData.size());
+			for (LotteryData data : allData)
+			{
+				writeRecord(buffer, data);
+				buffer.putInt(data.name == null ? NO_NAME : nameIndices.get(data.name));
+			}
+			buffer.putInt(names.size());
+			for (byte[] utf8 : names)
+				buffer.putInt(utf8.length).put(utf8);
+			return buffer.array();
+		}
+
+		@Override
+		public boolean accepts(Object value)
+		{
+			return value instanceof LotteryData;
+		}
+
+		@Override
+		public void writeValue(DataOutputStream output, Object value) throws IOException
+		{
+			//日誌的紀錄 和檔案中的紀錄相同 只是名字直接接在後面
+			LotteryData data = (LotteryData) value;
+			ByteBuffer record = ByteBuffer.allocate(RECORD_BYTES - Integer.BYTES);
+			writeRecord(record, data);
+			output.write(record.array());
+			if (data.name == null)
+				output.writeInt(NO_NAME);
+			else
+			{
+				byte[] utf8 = data.name.getBytes(StandardCharsets.UTF_8);
+				output.writeInt(utf8.length);
+				output.write(utf8);
+			}
+		}
+
+		@Override
+		public Object readValue(DataInputStream input) throws IOException
+		{
+			byte[] record = new byte[RECORD_BYTES - Integer.BYTES];
+			input.readFully(record);
+			LotteryData data = readRecord(ByteBuffer.wrap(record));
+			int nameLength = input.readInt();
+			if (nameLength < NO_NAME || nameLength > input.available()) //紀錄的內容都在記憶體裡 available就是剩下的長度
+				throw new IOException("Corrupt name length " + nameLength + " in a lottery data record");
+			if (nameLength != NO_NAME)
+			{
+				byte[] utf8 = new byte[nameLength];
+				input.readFully(utf8);
+				data.name = new String(utf8, StandardCharsets.UTF_8);
+			}
+			return data;
+		}
+
+		private static void writeRecord(ByteBuffer buffer, LotteryData data)
+		{
+			buffer.putLong(data.userID)
+					.putLong(data.blocks)
+					.putInt(data.betWon)
+					.putInt(data.betLost)
+					.putInt(data.betShowHandWon)
+					.putInt(data.betShowHandLost)
+					.putInt(data.slotWon)
+					.putInt(data.slotLost)
+					.putInt(data.slotShowHandWon)
+					.putInt(data.slotShowHandLost)
+					.putLong(data.lastClaimSecond)
+					.putInt(data.streak);
+		}
+
+		private static LotteryData readRecord(ByteBuffer buffer)
+		{
+			LotteryData data = new LotteryData(buffer.getLong());
+			data.blocks = buffer.getLong();
+			data.betWon = buffer.getInt();
+			data.betLost = buffer.getInt();
+			data.betShowHandWon = buffer.getInt();
+			data.betShowHandLost = buffer.getInt();
+			data.slotWon = buffer.getInt();
+			data.slotLost = buffer.getInt();
+			data.slotShowHandWon = buffer.getInt();
+			data.slotShowHandLost = buffer.getInt();
+			data.lastClaimSecond = buffer.getLong();
+			data.streak = buffer.getInt();
+			return data;
+		}
+
+		/**
+		 * Read the old {@code lottery_data.ser} and replay its journals, then write the binary file immediately, so the
+		 * migration only happens once. The old files are left untouched as a backup.
+		 */
+		private Object migrate(String fileName) throws IOException
+		{
+			if (!Files.exists(Paths.get(LEGACY_LOTTERY_DATA_FILE_NAME))) //全新的機器人
+				return null;
+
+			JournaledMap<Long, LotteryData> legacyMap = new JournaledMap<>(LEGACY_LOTTERY_DATA_FILE_NAME, null);
+			legacyMap.fill(FileHandle.deserialize(LEGACY_LOTTERY_DATA_FILE_NAME));
+			legacyMap.replayJournals(); //舊格式時期留下的日誌
+			Object legacyContent = legacyMap.content(); //不開啟日誌 所以不能經過map的方法
+			FileHandle.writeAtomically(fileName, encode(legacyContent));
+			FileHandle.log("Migrated ", ((Map<?, ?>) legacyContent).size(), " lottery data from ", LEGACY_LOTTERY_DATA_FILE_NAME, " to ", fileName);
+			return legacyContent;
+		}
+	}
+
 	/**
 	 * This is a data class that stores members' lottery data.
 	 *
@@ -120,7 +333,22 @@ public final class CommandBlocksHandle
 
 		public void setName(String newName)
 		{
+			if (Objects.equals(name, newName)) //每次啟動都會更新所有人的名字 大部分都沒變 不必寫日誌
+				return;
 			name = newName;
+			journal();
+		}
+
+		/**
+		 * Put this data into {@link #lotteryDataMap} again, in order to let the journal record the new state of this
+		 * data. Every method that changes the fields should call this method.
+		 *
+		 * @since 2.2
+		 * @author Alex Cai
+		 */
+		private void journal()
+		{
+			lotteryDataMap.put(userID, this); //重新放入 讓日誌記錄新的狀態
 		}
 
 		public String getName()
@@ -154,6 +382,7 @@ public final class CommandBlocksHandle
 
 			long oldValue = blocks; //更新方塊前的方塊數量
 			blocks = newValue; //更新方塊
+			journal();
 
 			boolean less = newValue < GAMBLE_ROLE_MIN; //true = 新值依舊比GAMBLE_ROLE_MIN少
 			if (oldValue < GAMBLE_ROLE_MIN == less) //沒有跨過GAMBLE_ROLE_MIN
@@ -235,6 +464,7 @@ public final class CommandBlocksHandle
 				if (isShowHand)
 					betShowHandLost++;
 			}
+			journal();
 		}
 
 		public void addSlot(boolean isWon, boolean isShowHand)
@@ -252,6 +482,7 @@ public final class CommandBlocksHandle
 				if (isShowHand)
 					slotShowHandLost++;
 			}
+			journal();
 		}
 
 		/**
@@ -282,6 +513,7 @@ public final class CommandBlocksHandle
 			if (difference >= 60 * 60 * 24 * 2) //大於兩天 代表超過48小時沒領了
 				streak = 0; //連續歸零
 			streak++; //+1 連續領
+			journal();
 			return true;
 		}
 
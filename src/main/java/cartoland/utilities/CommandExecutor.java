@@ -0,0 +1,93 @@
+package cartoland.utilities;
+
+import cartoland.commands.ICommand;
+import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
+
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * {@code CommandExecutor} runs the slash commands that block, such as fetching a web page or retrieving members one by
+ * one, on virtual threads, so that they don't stall the JDA event thread and every other command behind them. Each
+ * command can only run {@link #MAX_CONCURRENCY} times at once, further uses are turned away with a busy message, and a
+ * run that takes longer than {@link #TIMEOUT_SECONDS} seconds is interrupted. The user is told about the timeout only if
+ * the command already deferred its reply, since Discord doesn't accept a first reply after 3 seconds. Commands that don't block should not
+ * come here, running them inline is cheaper than a thread switch. Can not be instantiated or inherited.
+ *
+ * @since 2.2
+ * @author Alex Cai
+ */
+public final class CommandExecutor
+{
+	private CommandExecutor()
+	{
+		throw new AssertionError(IDs.YOU_SHALL_NOT_ACCESS);
+	}
+
+	private static final int MAX_CONCURRENCY = Integer.getInteger("cartoland.commandConcurrency", 4); //可以用-Dcartoland.commandConcurrency=數量 調整
+	private static final long TIMEOUT_SECONDS = Long.getLong("cartoland.commandTimeoutSeconds", 30L); //可以用-Dcartoland.commandTimeoutSeconds=秒數 調整
+
+	private static final ExecutorService executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("Command ", 0L).factory());
+	private static final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(runnable ->
+	{
+		Thread thread = new Thread(runnable, "Command Watchdog");
+		thread.setDaemon(true); //不要因為它而無法結束程式
+		return thread;
+	});
+	private static final Map<ICommand, Semaphore> permits = new ConcurrentHashMap<>(); //別名共用同一個ICommand 也就共用同一個上限
+
+	/**
+	 * Run a command on a virtual thread. If the command is already running {@link #MAX_CONCURRENCY} times, the user
+	 * gets an ephemeral busy message and {@code task} is not run.
+	 *
+	 * @param command The command, used to count how many times it is running.
+	 * @param event The event of the command, used to tell the user if the command is busy or timed out.
+	 * @param task What to run, usually {@link ICommand#commandProcess(SlashCommandInteractionEvent)} with logging.
+	 * @since 2.2
+	 * @author Alex Cai
+	 */
+	public static void execute(ICommand command, SlashCommandInteractionEvent event, Runnable task)
+	{
+		Semaphore semaphore = permits.computeIfAbsent(command, key -> new Semaphore(MAX_CONCURRENCY));
+		if (!semaphore.tryAcquire()) //太多人同時使用 不要排隊 排到了也可能超過3秒
+		{
+			event.reply(JsonHandle.getString(event.getUser().getIdLong(), "command.busy")).setEphemeral(true).queue();
+			return;
+		}
+
+		Future<?> future;
+		try
+		{
+			future = executor.submit(() ->
+			{
+				try
+				{
+					task.run();
+				}
+				catch (RuntimeException exception)
+				{
+					FileHandle.log(exception); //Future會吞掉例外 只好自己記錄
+				}
+				finally
+				{
+					semaphore.release();
+				}
+			});
+		}
+		catch (RejectedExecutionException exception) //執行器已經關閉
+		{
+			semaphore.release();
+			throw exception;
+		}
+
+		watchdog.schedule(() ->
+		{
+			if (!future.cancel(true)) //已經結束了
+				return;
+			if (event.isAcknowledged()) //已經deferReply了 只能從hook回覆
+				event.getHook().sendMessage(JsonHandle.getString(event.getUser().getIdLong(), "command.timeout")).setEphemeral(true).queue();
+			else //第一次回覆只能在3秒內 現在已經來不及了
+				FileHandle.log("/", event.getFullCommandName(), " timed out without replying");
+		}, TIMEOUT_SECONDS, TimeUnit.SECONDS);
+	}
+}
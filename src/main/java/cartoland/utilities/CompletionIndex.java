@@ -0,0 +1,239 @@
+package cartoland.utilities;
+
+import net.dv8tion.jda.api.interactions.commands.Command;
+
+import java.util.*;
+
+/**
+ * {@code CompletionIndex} is a typo tolerant auto complete engine over a fixed set of {@link Command.Choice}, which are
+ * built once and returned as they are. Choices are matched by their names, ignoring case, and ranked in three tiers:
+ * names that start with the query, names that contain the query, then names that contain something within a few
+ * edits of the query (so "telraw" still finds "tellraw"). Within a tier, fewer edits and earlier matches come first,
+ * then alphabetical order.
+ * <p>
+ * Names are kept sorted, and every trigram (three consecutive characters) of the names points to the names that
+ * contain it. A query only computes edit distances for the names that share enough trigrams with it, and keeps the
+ * best results in a bounded heap, so a keystroke stays far below a millisecond even for thousands of names.
+ *
+ * @since 2.2
+ * @author Alex Cai
+ */
+public final class CompletionIndex
+{
+	private static final int PREFIX = 0;
+	private static final int CONTAINS = 1;
+	private static final int FUZZY = 2;
+	private static final int TRIGRAM_LENGTH = 3;
+	private static final int MAX_DISTANCE = 3; //最多容許幾個錯字
+
+	private final String[] names; //小寫 已排序
+	private final List<Command.Choice> choices; //和names的順序相同
+	private final long[] trigrams; //已排序 三個字元組成一個long
+	private final int[][] postings; //postings[i]是含有trigrams[i]的名字索引 由小到大
+
+	/**
+	 * Build an index of choices whose names and values are the same.
+	 *
+	 * @param names The names.
+	 * @return The index.
+	 * @since 2.2
+	 * @author Alex Cai
+	 */
+	public static CompletionIndex ofNames(Collection<String> names)
+	{
+		List<Command.Choice> choices = new ArrayList<>(names.size());
+		for (String name : new TreeSet<>(names)) //去除重複
+			choices.add(new Command.Choice(name, name));
+		return new CompletionIndex(choices);
+	}
+
+	public CompletionIndex(Collection<Command.Choice> choices)
+	{
+		Command.Choice[] sortedChoices = choices.toArray(new Command.Choice[0]);
+		Arrays.sort(sortedChoices, Comparator.comparing((Command.Choice choice) -> choice.getName().toLowerCase(Locale.ROOT))
+				.thenComparing(Command.Choice::getName));
+		this.choices = Arrays.asList(sortedChoices); //固定大小 subList不會複製
+		names = new String[sortedChoices.length];
+		for (int i = 0; i < names.length; i++)
+			names[i] = sortedChoices[i].getName().toLowerCase(Locale.ROOT);
+
+		Map<Long, List<Integer>> trigramPostings = new HashMap<>(); //只在建立時使用 之後轉成陣列
+		for (int i = 0; i < names.length; i++)
+		{
+			String name = names[i];
+			for (int j = 0; j + TRIGRAM_LENGTH <= name.length(); j++)
+			{
+				List<Integer> posting = trigramPostings.computeIfAbsent(trigramAt(name, j), key -> new ArrayList<>());
+				if (posting.isEmpty() || posting.getLast() != i) //同一個名字裡重複的trigram只記一次
+					posting.add(i);
+			}
+		}
+		trigrams = new long[trigramPostings.size()];
+		int index = 0;
+		for (Long trigram : trigramPostings.keySet())
+			trigrams[index++] = trigram;
+		Arrays.sort(trigrams);
+		postings = new int[trigrams.length][];
+		for (int i = 0; i < trigrams.length; i++)
+			postings[i] = trigramPostings.get(trigrams[i]).stream().mapToInt(Integer::intValue).toArray();
+	}
+
+	/**
+	 * Get the best choices for what the user has typed.
+	 *
+	 * @param query What the user has typed.
+	 * @param limit The maximum number of choices.
+	 * @return The choices, best first.
+	 * @since 2.2
+	 * @author Alex Cai
+	 */
+	public List<Command.Choice> complete(String query, int limit)
+	{
+		if (query.isEmpty()) //還沒輸入 按照字母順序給出前面的
+			return choices.subList(0, Math.min(limit, choices.size()));
+
+		query = query.toLowerCase(Locale.ROOT);
+		int maxDistance = Math.min(query.length() / 4, MAX_DISTANCE); //短的查詢不容許錯字 否則什麼都會符合
+		long[] heap = new long[limit]; //分數的最大堆積 最差的在最上面
+		int heapSize = 0;
+		int[] distanceRow = new int[query.length() + 1];
+		int[] previousRow = new int[query.length() + 1];
+
+		if (query.length() < TRIGRAM_LENGTH || trigrams.length == 0) //沒有trigram可以用 直接全部檢查
+		{
+			for (int i = 0; i < names.length; i++)
+				heapSize = offer(heap, heapSize, score(i, query, maxDistance, previousRow, distanceRow));
+		}
+		else
+		{
+			//計算每個名字和查詢共有幾個trigram 每個錯字最多破壞3個trigram
+			int queryTrigrams = query.length() - TRIGRAM_LENGTH + 1;
+			int minimumShared = Math.max(1, queryTrigrams - TRIGRAM_LENGTH * maxDistance);
+			int[] shared = new int[names.length];
+			long[] seen = new long[queryTrigrams];
+			int seenCount = 0;
+			for (int j = 0; j < queryTrigrams; j++)
+			{
+				long trigram = trigramAt(query, j);
+				if (contains(seen, seenCount, trigram)) //查詢裡重複的trigram只算一次
+					continue;
+				seen[seenCount++] = trigram;
+				int found = Arrays.binarySearch(trigrams, trigram);
+				if (found < 0)
+					continue;
+				for (int nameIndex : postings[found])
+					shared[nameIndex]++;
+			}
+			for (int i = 0; i < names.length; i++)
+				if (shared[i] >= minimumShared)
+					heapSize = offer(heap, heapSize, score(i, query, maxDistance, previousRow, distanceRow));
+		}
+
+		Arrays.sort(heap, 0, heapSize); //分數小的在前
+		Command.Choice[] result = new Command.Choice[heapSize];
+		for (int i = 0; i < heapSize; i++)
+			result[i] = choices.get((int) heap[i]); //最低的32位元是名字的索引
+		return Arrays.asList(result);
+	}
+
+	/**
+	 * The score of a name, lower is better, or -1 if it doesn't match. From the highest bits: tier, edit distance,
+	 * position of the match, and the index of the name (which is alphabetical).
+	 */
+	private long score(int index, String query, int maxDistance, int[] previousRow, int[] distanceRow)
+	{
+		String name = names[index];
+		if (name.startsWith(query))
+			return pack(PREFIX, 0, 0, index);
+		int position = name.indexOf(query);
+		if (position != -1)
+			return pack(CONTAINS, 0, position, index);
+		if (maxDistance == 0)
+			return -1L;
+
+		//查詢對名字的任一子字串的編輯距離 名字的開頭和結尾不計成本
+		previousRow[0] = 0;
+		for (int j = 1; j <= query.length(); j++)
+			previousRow[j] = j;
+		int best = previousRow[query.length()];
+		int bestEnd = 0;
+		for (int i = 1; i <= name.length(); i++)
+		{
+			distanceRow[0] = 0; //可以從名字的任何位置開始
+			char nameChar = name.charAt(i - 1);
+			for (int j = 1; j <= query.length(); j++)
+			{
+				int substitution = previousRow[j - 1] + (query.charAt(j - 1) == nameChar ? 0 : 1);
+				int deletion = previousRow[j] + 1;
+				int insertion = distanceRow[j - 1] + 1;
+				distanceRow[j] = Math.min(substitution, Math.min(deletion, insertion));
+			}
+			if (distanceRow[query.length()] < best)
+			{
+				best = distanceRow[query.length()];
+				bestEnd = i;
+			}
+			int[] swap = previousRow;
+			previousRow = distanceRow;
+			distanceRow = swap;
+		}
+		if (best > maxDistance)
+			return -1L;
+		return pack(FUZZY, best, Math.max(0, bestEnd - query.length()), index);
+	}
+
+	private static long pack(int tier, int distance, int position, int index)
+	{
+		return (long) tier << 60 | (long) distance << 52 | (long) Math.min(position, 0xFFFFF) << 32 | index;
+	}
+
+	private static int offer(long[] heap, int size, long score)
+	{
+		if (score == -1L)
+			return size;
+		if (size < heap.length) //還沒滿 往上浮
+		{
+			int child = size;
+			while (child > 0)
+			{
+				int parent = (child - 1) >>> 1;
+				if (heap[parent] >= score)
+					break;
+				heap[child] = heap[parent];
+				child = parent;
+			}
+			heap[child] = score;
+			return size + 1;
+		}
+		if (size == 0 || score >= heap[0]) //比目前最差的還差
+			return size;
+		int parent = 0; //取代最差的 往下沉
+		while (true)
+		{
+			int child = parent * 2 + 1;
+			if (child >= size)
+				break;
+			if (child + 1 < size && heap[child + 1] > heap[child])
+				child++;
+			if (heap[child] <= score)
+				break;
+			heap[parent] = heap[child];
+			parent = child;
+		}
+		heap[parent] = score;
+		return size;
+	}
+
+	private static long trigramAt(String string, int index)
+	{
+		return (long) string.charAt(index) << 32 | (long) string.charAt(index + 1) << 16 | string.charAt(index + 2);
+	}
+
+	private static boolean contains(long[] array, int length, long value)
+	{
+		for (int i = 0; i < length; i++)
+			if (array[i] == value)
+				return true;
+		return false;
+	}
+}
@@ -0,0 +1,95 @@
+package cartoland.utilities;
+
+import java.util.*;
+
+/**
+ * {@code DispatchTable} is an immutable map from a fixed set of names, such as command names, to handlers. It is
+ * built once with a perfect hash: a multiplier is searched so that {@code hashCode() * multiplier} sends every name to
+ * its own slot, so a lookup is the cached hash code of the string, a multiplication, two array loads and one
+ * {@link String#equals}, without probing. Aliases are separate names that share the same value.
+ *
+ * @param <V> The type of the handlers.
+ * @since 2.2
+ * @author Alex Cai
+ */
+public final class DispatchTable<V>
+{
+	private static final int ATTEMPTS = 256; //每個大小試幾個乘數 找不到就把表加大
+
+	private final String[] names;
+	private final V[] values;
+	private final int multiplier;
+	private final int shift;
+
+	/**
+	 * Build a table from the names and their handlers.
+	 *
+	 * @param handlers The names and their handlers, not modified.
+	 * @throws IllegalArgumentException If two names have the same hash code, which can not be told apart by any multiplier.
+	 * @since 2.2
+	 * @author Alex Cai
+	 */
+	@SuppressWarnings("unchecked")
+	public DispatchTable(Map<String, ? extends V> handlers)
+	{
+		String[] keys = handlers.keySet().toArray(new String[0]);
+		Set<Integer> hashCodes = HashSet.newHashSet(keys.length);
+		for (String key : keys)
+			if (!hashCodes.add(key.hashCode()))
+				throw new IllegalArgumentException("Names with the same hash code: " + key);
+
+		SplittableRandom random = new SplittableRandom(keys.length); //固定的種子 每次啟動都建出一樣的表
+		int bits = 1;
+		while (1 << bits < keys.length * 2) //至少兩倍大 比較容易找到
+			bits++;
+		String[] slots;
+		int candidate;
+		search:
+		while (true)
+		{
+			for (int attempt = 0; attempt < ATTEMPTS; attempt++)
+			{
+				candidate = random.nextInt() | 1; //奇數
+				slots = new String[1 << bits];
+				boolean perfect = true;
+				for (String key : keys)
+				{
+					int index = (key.hashCode() * candidate) >>> (32 - bits);
+					if (slots[index] != null) //撞到了 換下一個乘數
+					{
+						perfect = false;
+						break;
+					}
+					slots[index] = key;
+				}
+				if (perfect)
+					break search;
+			}
+			bits++; //這個大小找不到 把表加大
+		}
+
+		names = slots;
+		values = (V[]) new Object[slots.length];
+		for (int i = 0; i < slots.length; i++)
+			if (slots[i] != null)
+				values[i] = handlers.get(slots[i]);
+		multiplier = candidate;
+		shift = 32 - bits;
+	}
+
+	/**
+	 * Get the handler of a name.
+	 *
+	 * @param name The name, can be null.
+	 * @return The handler, or null if the name is not in this table.
+	 * @since 2.2
+	 * @author Alex Cai
+	 */
+	public V get(String name)
+	{
+		if (name == null)
+			return null;
+		int index = (name.hashCode() * multiplier) >>> shift;
+		return name.equals(names[index]) ? values[index] : null;
+	}
+}
@@ -1,12 +1,13 @@
 package cartoland.utilities;
 
-import cartoland.Cartoland;
+import cartoland.utilities.AsyncLogger.Backpressure;
 
 import java.io.*;
-import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * {@code FileHandle} is a utility class that provides every functions that this program need to deal with file input and
@@ -22,24 +23,37 @@ public final class FileHandle
 		throw new AssertionError(IDs.YOU_SHALL_NOT_ACCESS);
 	}
 
-	private static final StringBuilder logString = new StringBuilder();
-	private static final StringBuilder dmString = new StringBuilder();
+	private static final int LOG_CAPACITY = 1 << 13; //環形緩衝區的大小 必須是2的次方
+	private static final int LOG_FLUSH_THRESHOLD = 1 << 16; //緩衝超過64K字元就寫入
+	private static final long LOG_FLUSH_SECONDS = Long.getLong("cartoland.logFlushSeconds", 5L); //可以用-Dcartoland.logFlushSeconds=秒數 調整
+	private static final AsyncLogger logger = new AsyncLogger(LOG_CAPACITY, LOG_FLUSH_THRESHOLD, LOG_FLUSH_SECONDS, TimeUnit.SECONDS);
 
-	//將JSON讀入進字串
-	static String buildJsonStringFromFile(String fileName)
+	private static final List<SerializeObject> serializeObjects = new ArrayList<>(11);
+	private static final List<JournaledStore> journaledStores = new ArrayList<>(11);
+
+	private static final long SNAPSHOT_PERIOD_SECONDS = 60L; //每分鐘檢查一次有沒有修改過的物件
+
+	//在背景將修改過的物件寫入.ser檔 不佔用JDA的事件執行緒
+	private static final ScheduledExecutorService snapshotScheduler = Executors.newSingleThreadScheduledExecutor(runnable ->
 	{
-		try
-		{
-			return Files.readString(Paths.get(fileName)); //從指定的檔名中讀取全部的資料 並將這些資料做成一個字串
-		}
-		catch (IOException exception)
-		{
-			log(exception);
-			return "{}";
-		}
-	}
+		Thread thread = new Thread(runnable, "Snapshot Scheduler");
+		thread.setDaemon(true); //不要因為它而無法結束程式
+		return thread;
+	});
 
-	private static final List<SerializeObject> serializeObjects = new ArrayList<>(11);
+	//在開機時平行讀取.ser檔
+	private static final ExecutorService storeLoader = Executors.newCachedThreadPool(runnable ->
+	{
+		Thread thread = new Thread(runnable, "Store Loader");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private static final List<Future<?>> ownerInitializations = new ArrayList<>();
+
+	static
+	{
+		snapshotScheduler.scheduleWithFixedDelay(FileHandle::snapshotDirtyStores, SNAPSHOT_PERIOD_SECONDS, SNAPSHOT_PERIOD_SECONDS, TimeUnit.SECONDS);
+	}
 
 	/**
 	 * Register an object to the {@link #serializeObjects} list, then the objects in that list will be serialized by
@@ -59,9 +73,229 @@ public final class FileHandle
 			serializeObjects.add(new SerializeObject(fileName, object)); //向註冊清單中新增一個註冊物件
 	}
 
+	/**
+	 * Deserialize a map from a file, replay its journal, then register it. Unlike {@link #registerSerialize(String, Object)},
+	 * every mutation of the returned map is appended to a journal file immediately, hence the content survives a
+	 * crash. Only when the map was changed, the snapshot scheduler rewrites the file in the background and clears the
+	 * journal. Views such as {@link Map#keySet()} of the
+	 * returned map are read-only.
+	 *
+	 * @param fileName The name of the serialize file. The journal will be {@code fileName + ".journal"}.
+	 * @param <K> Type of keys.
+	 * @param <V> Type of values.
+	 * @return A map that journals its mutations.
+	 * @since 2.2
+	 * @author Alex Cai
+	 */
+	public static <K, V> Map<K, V> journaledMap(String fileName)
+	{
+		JournaledMap<K, V> map = new JournaledMap<>(fileName, null);
+		registerJournaled(map);
+		return map;
+	}
+
+	/**
+	 * Same as {@link #journaledMap(String)}, but the file and the values in the journal are read and written by a
+	 * {@link JournaledStore.Codec} instead of Java serialization.
+	 *
+	 * @param fileName The name of the file. The journal will be {@code fileName + ".journal"}.
+	 * @param codec The format of the file.
+	 * @param <K> Type of keys.
+	 * @param <V> Type of values.
+	 * @return A map that journals its mutations.
+	 * @since 2.2
+	 * @author Alex Cai
+	 */
+	static <K, V> Map<K, V> journaledMap(String fileName, JournaledStore.Codec codec)
+	{
+		JournaledMap<K, V> map = new JournaledMap<>(fileName, codec);
+		registerJournaled(map);
+		return map;
+	}
+
+	/**
+	 * Deserialize a set from a file, replay its journal, then register it. See {@link #journaledMap(String)}.
+	 *
+	 * @param fileName The name of the serialize file. The journal will be {@code fileName + ".journal"}.
+	 * @param <E> Type of elements.
+	 * @return A set that journals its mutations.
+	 * @since 2.2
+	 * @author Alex Cai
+	 */
+	public static <E> Set<E> journaledSet(String fileName)
+	{
+		JournaledSet<E> set = new JournaledSet<>(fileName);
+		registerJournaled(set);
+		return set;
+	}
+
+	/**
+	 * Same as {@link #journaledMap(String, JournaledStore.Codec)}, but the map is a primitive {@code long} to
+	 * {@code byte} map, for small per-user settings that are read on every reply.
+	 *
+	 * @param fileName The name of the file. The journal will be {@code fileName + ".journal"}.
+	 * @param codec The format of the file, which decodes into a {@link LongByteMap}.
+	 * @return A map that journals its mutations.
+	 * @since 2.2
+	 * @author Alex Cai
+	 */
+	static JournaledLongByteMap journaledLongByteMap(String fileName, JournaledStore.Codec codec)
+	{
+		JournaledLongByteMap map = new JournaledLongByteMap(fileName, codec);
+		registerJournaled(map);
+		return map;
+	}
+
+	private static void registerJournaled(JournaledStore store)
+	{
+		synchronized (journaledStores)
+		{
+			journaledStores.add(store);
+		}
+		loadStore(store); //在註冊的執行緒讀取 開機時就是store loader
+	}
+
+	private static void loadStore(JournaledStore store)
+	{
+		store.load();
+		log("Loaded ", store.fileName(), " in ", TimeUnit.NANOSECONDS.toMillis(store.loadNanos()), " ms");
+	}
+
+	/**
+	 * Initialize the classes that own journaled stores in parallel on the store loader, so that their files are read
+	 * at the same time during startup instead of one after another whenever each class is first used. Call
+	 * {@link #awaitStores()} to wait for them. Each store logs its own load time.
+	 *
+	 * @param owners The classes whose static initializers call {@link #journaledMap(String)} or {@link #journaledSet(String)}.
+	 * @since 2.2
+	 * @author Alex Cai
+	 */
+	public static void loadStores(Class<?>... owners)
+	{
+		synchronized (ownerInitializations)
+		{
+			for (Class<?> owner : owners)
+				ownerInitializations.add(storeLoader.submit(() -> Class.forName(owner.getName(), true, owner.getClassLoader()))); //執行static區塊
+		}
+	}
+
+	/**
+	 * Wait until every class passed to {@link #loadStores(Class[])} was initialized, which means every store they own
+	 * was loaded.
+	 *
+	 * @since 2.2
+	 * @author Alex Cai
+	 */
+	public static void awaitStores()
+	{
+		long begin = System.nanoTime();
+		synchronized (ownerInitializations)
+		{
+			for (Future<?> initialization : ownerInitializations)
+			{
+				try
+				{
+					initialization.get();
+				}
+				catch (ExecutionException exception)
+				{
+					log(exception);
+				}
+				catch (InterruptedException exception)
+				{
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+			ownerInitializations.clear();
+		}
+		log("Waited ", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin), " ms for stores");
+	}
+
+	private static void snapshotDirtyStores()
+	{
+		JournaledStore[] stores;
+		synchronized (journaledStores)
+		{
+			stores = journaledStores.toArray(new JournaledStore[0]);
+		}
+		for (JournaledStore store : stores)
+			store.snapshot(); //沒有修改過的會直接跳過
+	}
+
+	/**
+	 * Statistics of the snapshots that were written by the snapshot scheduler, one line per journaled object. Each line
+	 * contains the file name, the load time, how many snapshots were written, the duration of the last snapshot and the
+	 * total bytes written.
+	 *
+	 * @return Snapshot statistics, one line per file.
+	 * @since 2.2
+	 * @author Alex Cai
+	 */
+	public static String snapshotStatistics()
+	{
+		StringBuilder statistics = new StringBuilder();
+		synchronized (journaledStores)
+		{
+			for (JournaledStore store : journaledStores)
+				statistics.append(store.fileName())
+						.append(": ").append(store.isLoaded() ? "loaded in " + TimeUnit.NANOSECONDS.toMillis(store.loadNanos()) + " ms, " : "loading, ")
+						.append(store.snapshots()).append(" snapshots, last ")
+						.append(TimeUnit.NANOSECONDS.toMillis(store.lastSnapshotNanos())).append(" ms, ")
+						.append(store.bytesWritten()).append(" bytes written\n");
+		}
+		return statistics.toString();
+	}
+
+	/**
+	 * Write bytes to a file without ever leaving a truncated file. The bytes are written to a temporary file and
+	 * forced to the disk, then the temporary file replaces the original file with an atomic move.
+	 *
+	 * @param fileName The name of the file.
+	 * @param bytes The whole content of the file.
+	 * @throws IOException When the file can't be written.
+	 * @since 2.2
+	 * @author Alex Cai
+	 */
+	static void writeAtomically(String fileName, byte[] bytes) throws IOException
+	{
+		Path target = Paths.get(fileName);
+		Path temporary = Paths.get(fileName + ".tmp");
+		try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+		{
+			ByteBuffer buffer = ByteBuffer.wrap(bytes);
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+			channel.force(true); //確保真的寫到硬碟上了 才取代原本的檔案
+		}
+		replaceAtomically(temporary, target);
+	}
+
+	/**
+	 * Replace a file with a temporary file that was already forced to the disk, atomically if the file system supports it.
+	 *
+	 * @param temporary The temporary file.
+	 * @param target The file to be replaced.
+	 * @throws IOException When the file can't be moved.
+	 * @since 2.2
+	 * @author Alex Cai
+	 */
+	static void replaceAtomically(Path temporary, Path target) throws IOException
+	{
+		try
+		{
+			Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		}
+		catch (AtomicMoveNotSupportedException exception) //檔案系統不支援原子性的移動
+		{
+			Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
 	/**
 	 * This method will be call when {@link cartoland.events.BotOnlineOffline#onShutdown(net.dv8tion.jda.api.events.session.ShutdownEvent)}
-	 * was executed. It will serialize every objects in {@link #serializeObjects}, which was registered by {@link #registerSerialize(String, Object)}.
+	 * was executed. It will serialize every objects in {@link #serializeObjects}, which was registered by {@link #registerSerialize(String, Object)},
+	 * and write snapshots of every changed object that was registered by {@link #journaledMap(String)} or {@link #journaledSet(String)}.
 	 *
 	 * @since 2.0
 	 * @author Alex Cai
@@ -70,6 +304,22 @@ public final class FileHandle
 	{
 		for (SerializeObject so : serializeObjects)
 			so.serialize();
+
+		snapshotScheduler.shutdown();
+		try
+		{
+			snapshotScheduler.awaitTermination(1L, TimeUnit.MINUTES); //等待正在寫入的快照
+		}
+		catch (InterruptedException exception)
+		{
+			Thread.currentThread().interrupt();
+		}
+		snapshotDirtyStores(); //最後一次快照
+		synchronized (journaledStores)
+		{
+			for (JournaledStore store : journaledStores)
+				store.close();
+		}
 	}
 
 	/**
@@ -98,11 +348,12 @@ public final class FileHandle
 	{
 		private void serialize()
 		{
-			try (FileOutputStream fileStream = new FileOutputStream(fileName);
-				 ObjectOutputStream objectStream = new ObjectOutputStream(fileStream))
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			try (ObjectOutputStream objectStream = new ObjectOutputStream(bytes))
 			{
 				objectStream.writeObject(object);
 				objectStream.flush();
+				writeAtomically(fileName, bytes.toByteArray()); //寫到一半當機也不會損毀原本的檔案
 			}
 			catch (IOException exception)
 			{
@@ -111,54 +362,49 @@ public final class FileHandle
 		}
 	}
 
-	public synchronized static void flushLog()
+	/**
+	 * Write every log that was published before this call to {@code logs/} and {@code dms/}, and wait until it finished.
+	 *
+	 * @since 1.0
+	 * @author Alex Cai
+	 */
+	public static void flushLog()
 	{
-		String dateString = TimerHandle.getDateString();
-		//一定要事先備好logs資料夾
-		try (FileWriter logger = new FileWriter("logs/" + dateString, true);
-			FileWriter dmLogger = new FileWriter("dms/" + dateString, true))
-		{
-			logger.write(logString.toString()); //關閉時寫入
-			logString.setLength(0); //清空暫存
-			dmLogger.write(dmString.toString());
-			dmString.setLength(0);
-		}
-		catch (IOException exception)
-		{
-			//noinspection CallToPrintStackTrace
-			exception.printStackTrace();
-			Cartoland.getJDA().shutdownNow();
-		}
+		logger.flush();
 	}
 
-	private synchronized static void log(StringBuilder logger, Object... outputs)
+	public static void dmLog(Object... outputs)
 	{
-		//時間 內容
-		logger.append(TimerHandle.getTimeString()).append('\t');
-		for (Object output : outputs)
-		{
-			if (output instanceof Character c) //StringBuilder面對char時不會套用String.valueOf
-				logger.append(c.charValue());
-			else
-				logger.append(output);
-		}
-		logger.append('\n');
+		logger.dmLog(outputs, Backpressure.BLOCK); //私訊的紀錄不能遺失
 	}
 
-	public synchronized static void dmLog(Object... outputs)
+	/**
+	 * Log a line. This only claims a slot in the ring buffer of {@link AsyncLogger}, the formatting and the writing are
+	 * done by the logger thread, hence it never takes a lock. If the buffer is full, the line is dropped and counted.
+	 *
+	 * @param outputs Objects that will be concatenated into a line.
+	 * @since 1.0
+	 * @author Alex Cai
+	 */
+	public static void log(Object... outputs)
 	{
-		log(dmString, outputs); //專為私訊的log
+		logger.log(outputs, Backpressure.DROP); //指令的紀錄很多 寧可丟掉也不要拖慢指令
 	}
 
-	public synchronized static void log(Object... outputs)
+	public static void log(Exception exception)
 	{
-		log(logString, outputs);
+		logger.log(exception, Backpressure.BLOCK); //錯誤一定要記錄
 	}
 
-	public synchronized static void log(Exception exception)
+	/**
+	 * How many log lines were dropped because the ring buffer was full.
+	 *
+	 * @return The number of dropped lines since the bot started.
+	 * @since 2.2
+	 * @author Alex Cai
+	 */
+	public static long droppedLogs()
 	{
-		logString.append(TimerHandle.getTimeString()).append("\t\n");
-		for (StackTraceElement trace : exception.getStackTrace())
-			logString.append('\t').append(trace).append('\n');
+		return logger.dropped();
 	}
 }
\ No newline at end of file
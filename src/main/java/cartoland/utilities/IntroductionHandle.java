@@ -0,0 +1,436 @@
+package cartoland.utilities;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+
+/**
+ * {@code IntroductionHandle} is a utility class that stores the introductions of members. The introductions are not
+ * kept on the heap. Instead, they are UTF-8 blobs appended to {@code serialize/introduction.dat}, which is memory
+ * mapped, and the heap only holds a sorted index from user ID to the offset of the latest record of that user. An
+ * update appends a new record, and a deletion appends a tombstone. When the dead records take more space than the
+ * live ones, a background compactor rewrites the file with only the live records. Can not be instantiated or inherited.
+ * <p>
+ * A record looks like: {@code [long userID][int length][int crc32][UTF-8 bytes]}, where a length of -1 means the
+ * introduction was deleted. A torn record at the end of the file (the bot crashed while appending) is cut off when
+ * the file is opened.
+ *
+ * @since 2.2
+ * @author Alex Cai
+ */
+public final class IntroductionHandle
+{
+	private IntroductionHandle()
+	{
+		throw new AssertionError(IDs.YOU_SHALL_NOT_ACCESS);
+	}
+
+	private static final String DATA_FILE_NAME = "serialize/introduction.dat";
+	private static final String LEGACY_FILE_NAME = "serialize/introduction.ser"; //舊的Java串聯化格式 只會在遷移時讀取
+	private static final int HEADER_BYTES = Long.BYTES + Integer.BYTES + Integer.BYTES; //userID, 長度, CRC
+	private static final int DELETED = -1;
+	private static final long COMPACT_MIN_DEAD_BYTES = 1L << 20; //至少有1MB的死資料 才值得重寫
+
+	private static final Path dataPath = Paths.get(DATA_FILE_NAME);
+	private static final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+	private static final CRC32 crc = new CRC32();
+
+	private static FileChannel dataChannel;
+	private static MappedByteBuffer mapped; //唯讀的映射 檔案變長後才重新映射
+	private static long dataEnd; //最後一筆完整紀錄的結尾
+	private static long deadBytes; //被覆蓋或刪除的紀錄 佔了多少空間
+
+	//依照userID排序 用二分搜尋查詢
+	private static long[] userIDs = new long[16];
+	private static long[] offsets = new long[16];
+	private static int size;
+
+	private static boolean compactionScheduled;
+	private static final ExecutorService compactor = Executors.newSingleThreadExecutor(runnable ->
+	{
+		Thread thread = new Thread(runnable, "Introduction Compactor");
+		thread.setDaemon(true); //不要因為它而無法結束程式
+		return thread;
+	});
+
+	static
+	{
+		open();
+	}
+
+	/**
+	 * Get the introduction of a user. The text is decoded directly from the mapped file.
+	 *
+	 * @param userID The ID of the user.
+	 * @return The introduction, or null if the user doesn't have one.
+	 * @since 2.2
+	 * @author Alex Cai
+	 */
+	public static synchronized String getIntroduction(long userID)
+	{
+		int index = Arrays.binarySearch(userIDs, 0, size, userID);
+		if (index < 0) //沒有這個使用者的自介
+			return null;
+		MappedByteBuffer buffer = mappedUntil(dataEnd);
+		if (buffer == null) //無法映射檔案
+			return null;
+		int offset = (int) offsets[index];
+		return StandardCharsets.UTF_8.decode(buffer.slice(offset + HEADER_BYTES, buffer.getInt(offset + Long.BYTES))).toString();
+	}
+
+	/**
+	 * Replace the introduction of a user by appending a new record.
+	 *
+	 * @param userID The ID of the user.
+	 * @param content The new introduction.
+	 * @since 2.2
+	 * @author Alex Cai
+	 */
+	public static synchronized void updateIntroduction(long userID, String content)
+	{
+		byte[] utf8 = content.getBytes(StandardCharsets.UTF_8);
+		long offset = append(userID, utf8);
+		if (offset < 0L) //寫入失敗
+			return;
+
+		int index = Arrays.binarySearch(userIDs, 0, size, userID);
+		if (index >= 0) //覆蓋舊的自介
+		{
+			deadBytes += recordBytes(offsets[index]);
+			offsets[index] = offset;
+		}
+		else
+			insert(-index - 1, userID, offset);
+		scheduleCompactionIfNeeded();
+	}
+
+	/**
+	 * Delete the introduction of a user by appending a tombstone.
+	 *
+	 * @param userID The ID of the user.
+	 * @since 2.2
+	 * @author Alex Cai
+	 */
+	public static synchronized void deleteIntroduction(long userID)
+	{
+		int index = Arrays.binarySearch(userIDs, 0, size, userID);
+		if (index < 0) //本來就沒有
+			return;
+		if (append(userID, null) < 0L) //寫入失敗
+			return;
+
+		deadBytes += recordBytes(offsets[index]) + HEADER_BYTES; //舊紀錄和墓碑都是死資料
+		size--;
+		System.arraycopy(userIDs, index + 1, userIDs, index, size - index);
+		System.arraycopy(offsets, index + 1, offsets, index, size - index);
+		scheduleCompactionIfNeeded();
+	}
+
+	private static void open()
+	{
+		try
+		{
+			if (!Files.exists(dataPath)) //還沒有新格式的檔案
+				migrate();
+			dataChannel = FileChannel.open(dataPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			scan();
+		}
+		catch (IOException exception)
+		{
+			FileHandle.log(exception);
+		}
+	}
+
+	//從頭讀過每筆紀錄的標頭 建立索引
+	private static void scan() throws IOException
+	{
+		long fileSize = dataChannel.size();
+		MappedByteBuffer buffer = dataChannel.map(FileChannel.MapMode.READ_ONLY, 0L, fileSize);
+		Map<Long, Long> latest = new HashMap<>(); //只存ID和位置 和自介的長度無關
+		int position = 0;
+		while (position + HEADER_BYTES <= fileSize)
+		{
+			long userID = buffer.getLong(position);
+			int length = buffer.getInt(position + Long.BYTES);
+			int checksum = buffer.getInt(position + Long.BYTES + Integer.BYTES);
+			int payloadLength = Math.max(length, 0);
+			if (length < DELETED || position + HEADER_BYTES + payloadLength > fileSize) //寫到一半就當機的紀錄
+				break;
+			crc.reset();
+			crc.update(buffer.slice(position + HEADER_BYTES, payloadLength));
+			if ((int) crc.getValue() != checksum) //損毀的紀錄 之後的都不能相信了
+				break;
+
+			Long old = length == DELETED ? latest.remove(userID) : latest.put(userID, (long) position);
+			if (old != null)
+				deadBytes += HEADER_BYTES + Math.max(buffer.getInt((int) (old + Long.BYTES)), 0);
+			if (length == DELETED)
+				deadBytes += HEADER_BYTES;
+			position += HEADER_BYTES + payloadLength;
+		}
+
+		if (position < fileSize) //切掉不完整的紀錄
+		{
+			FileHandle.log(DATA_FILE_NAME, " ends with a torn record at ", position, ", truncated");
+			dataChannel.truncate(position);
+		}
+		dataEnd = position;
+
+		size = latest.size();
+		userIDs = new long[Math.max(size, 16)];
+		offsets = new long[userIDs.length];
+		int index = 0;
+		for (long userID : new TreeSet<>(latest.keySet())) //依照ID排序
+		{
+			userIDs[index] = userID;
+			offsets[index] = latest.get(userID);
+			index++;
+		}
+	}
+
+	//從introduction.ser和它的日誌 一次性地轉換成新格式 舊的檔案保留作為備份
+	//先寫到暫存檔 完成後才換成introduction.dat 遷移到一半當機的話 下次啟動會重新遷移
+	private static void migrate() throws IOException
+	{
+		if (!Files.exists(Paths.get(LEGACY_FILE_NAME))) //全新的機器人
+			return;
+
+		JournaledMap<Long, String> legacyMap = new JournaledMap<>(LEGACY_FILE_NAME, null);
+		legacyMap.fill(FileHandle.deserialize(LEGACY_FILE_NAME));
+		legacyMap.replayJournals(); //舊格式時期留下的日誌
+		@SuppressWarnings("unchecked")
+		Map<Long, String> legacyContent = (Map<Long, String>) legacyMap.content(); //不開啟日誌 所以不能經過map的方法
+		Path temporary = Paths.get(DATA_FILE_NAME + ".tmp");
+		dataChannel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		dataEnd = 0L;
+		try
+		{
+			for (Map.Entry<Long, String> idAndIntroduction : legacyContent.entrySet())
+				if (append(idAndIntroduction.getKey(), idAndIntroduction.getValue().getBytes(StandardCharsets.UTF_8)) < 0L)
+					throw new IOException("Can't write " + temporary); //寧可下次重新遷移 也不要少了自介
+			dataChannel.force(true); //確保真的寫到硬碟上了 才取代成正式的檔案
+		}
+		finally
+		{
+			dataChannel.close();
+			dataChannel = null;
+			dataEnd = 0L;
+		}
+		FileHandle.replaceAtomically(temporary, dataPath);
+		FileHandle.log("Migrated ", legacyContent.size(), " introductions from ", LEGACY_FILE_NAME, " to ", DATA_FILE_NAME);
+	}
+
+	/**
+	 * Append a record at {@link #dataEnd}.
+	 *
+	 * @param userID The ID of the user.
+	 * @param utf8 The introduction, or null for a tombstone.
+	 * @return The offset of the record, or -1 if it can't be written.
+	 */
+	private static long append(long userID, byte[] utf8)
+	{
+		if (dataChannel == null) //檔案開啟失敗
+			return -1L;
+
+		crc.reset();
+		if (utf8 != null)
+			crc.update(utf8);
+		header.clear();
+		header.putLong(userID).putInt(utf8 == null ? DELETED : utf8.length).putInt((int) crc.getValue()).flip();
+		ByteBuffer[] buffers = { header, ByteBuffer.wrap(utf8 == null ? new byte[0] : utf8) };
+		long offset = dataEnd;
+		try
+		{
+			dataChannel.position(offset);
+			while (buffers[0].hasRemaining() || buffers[1].hasRemaining()) //一次write 讓紀錄盡可能完整地抵達作業系統 墓碑沒有內容
+				dataChannel.write(buffers);
+		}
+		catch (IOException exception)
+		{
+			FileHandle.log(exception);
+			return -1L;
+		}
+		dataEnd = offset + HEADER_BYTES + (utf8 == null ? 0 : utf8.length);
+		return offset;
+	}
+
+	private static void insert(int index, long userID, long offset)
+	{
+		if (size == userIDs.length) //陣列滿了
+		{
+			userIDs = Arrays.copyOf(userIDs, size << 1);
+			offsets = Arrays.copyOf(offsets, size << 1);
+		}
+		System.arraycopy(userIDs, index, userIDs, index + 1, size - index);
+		System.arraycopy(offsets, index, offsets, index + 1, size - index);
+		userIDs[index] = userID;
+		offsets[index] = offset;
+		size++;
+	}
+
+	private static long recordBytes(long offset)
+	{
+		MappedByteBuffer buffer = mappedUntil(offset + HEADER_BYTES);
+		return buffer == null ? HEADER_BYTES : HEADER_BYTES + Math.max(buffer.getInt((int) offset + Long.BYTES), 0);
+	}
+
+	//如果映射的範圍不夠 就重新映射整個檔案
+	private static MappedByteBuffer mappedUntil(long end)
+	{
+		if (mapped != null && mapped.capacity() >= end)
+			return mapped;
+		if (dataChannel == null)
+			return null;
+		try
+		{
+			mapped = dataChannel.map(FileChannel.MapMode.READ_ONLY, 0L, dataEnd);
+			return mapped;
+		}
+		catch (IOException exception)
+		{
+			FileHandle.log(exception);
+			return null;
+		}
+	}
+
+	private static void scheduleCompactionIfNeeded()
+	{
+		if (compactionScheduled || deadBytes < COMPACT_MIN_DEAD_BYTES || deadBytes < dataEnd - deadBytes) //死資料還不夠多
+			return;
+		compactionScheduled = true;
+		compactor.execute(IntroductionHandle::compact);
+	}
+
+	//只把還活著的紀錄 依照ID的順序寫入新檔案 再取代原本的檔案
+	//寫入新檔案時不持有鎖 查詢和更新照常進行 最後才把這段期間附加的紀錄補上並換成新檔案
+	private static void compact()
+	{
+		long[] snapshotIDs;
+		long[] snapshotOffsets;
+		long snapshotEnd;
+		long snapshotDeadBytes;
+		MappedByteBuffer buffer;
+		synchronized (IntroductionHandle.class)
+		{
+			buffer = mappedUntil(dataEnd);
+			if (buffer == null)
+			{
+				compactionScheduled = false;
+				return;
+			}
+			snapshotIDs = Arrays.copyOf(userIDs, size);
+			snapshotOffsets = Arrays.copyOf(offsets, size);
+			snapshotEnd = dataEnd;
+			snapshotDeadBytes = deadBytes;
+		}
+
+		long begin = System.nanoTime();
+		Path temporary = Paths.get(DATA_FILE_NAME + ".tmp");
+		long[] newOffsets = new long[snapshotOffsets.length];
+		long position = 0L;
+		FileChannel output = null;
+		try
+		{
+			//快照裡的紀錄只會被附加 不會被改寫 所以可以在鎖外讀取舊的映射
+			output = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+			for (int i = 0; i < snapshotOffsets.length; i++)
+			{
+				int offset = (int) snapshotOffsets[i];
+				ByteBuffer record = buffer.slice(offset, HEADER_BYTES + buffer.getInt(offset + Long.BYTES));
+				newOffsets[i] = position;
+				while (record.hasRemaining())
+					position += output.write(record);
+			}
+			output.force(true); //大部分的資料在鎖外寫到硬碟上
+		}
+		catch (IOException exception)
+		{
+			FileHandle.log(exception);
+			closeQuietly(output);
+			synchronized (IntroductionHandle.class)
+			{
+				compactionScheduled = false;
+			}
+			return;
+		}
+
+		synchronized (IntroductionHandle.class)
+		{
+			compactionScheduled = false;
+			long oldSize = dataEnd;
+			long tailStart = position; //快照之後附加的紀錄 在新檔案中的位置
+			try
+			{
+				//原封不動地補上快照之後的紀錄 包括墓碑 否則被刪除的自介會在重新啟動後復活
+				for (long copied = snapshotEnd; copied < dataEnd; )
+					copied += dataChannel.transferTo(copied, dataEnd - copied, output);
+				position += dataEnd - snapshotEnd;
+				output.force(true); //確保真的寫到硬碟上了 才取代原本的檔案
+				output.close();
+				dataChannel.close();
+				mapped = null;
+				FileHandle.replaceAtomically(temporary, dataPath);
+				dataChannel = FileChannel.open(dataPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			}
+			catch (IOException exception)
+			{
+				FileHandle.log(exception);
+				closeQuietly(output);
+				if (!dataChannel.isOpen()) //原本的檔案已經關閉了 重新讀取
+					reopen();
+				return;
+			}
+
+			//位置不在快照之後的 一定是快照時的那筆紀錄 因為位置只會往後移
+			for (int i = 0; i < size; i++)
+				offsets[i] = offsets[i] >= snapshotEnd ?
+						tailStart + offsets[i] - snapshotEnd : newOffsets[Arrays.binarySearch(snapshotIDs, userIDs[i])];
+			dataEnd = position;
+			deadBytes -= snapshotDeadBytes; //快照時的死資料都丟掉了 之後產生的都還在新檔案裡
+			FileHandle.log("Compacted ", DATA_FILE_NAME, " from ", oldSize, " to ", position, " bytes in ",
+						   (System.nanoTime() - begin) / 1_000_000L, " ms");
+		}
+	}
+
+	private static void closeQuietly(FileChannel channel)
+	{
+		if (channel == null)
+			return;
+		try
+		{
+			channel.close();
+		}
+		catch (IOException exception)
+		{
+			FileHandle.log(exception);
+		}
+	}
+
+	private static void reopen()
+	{
+		size = 0;
+		deadBytes = 0L;
+		dataEnd = 0L;
+		mapped = null;
+		try
+		{
+			dataChannel = FileChannel.open(dataPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			scan();
+		}
+		catch (IOException exception)
+		{
+			dataChannel = null;
+			FileHandle.log(exception);
+		}
+	}
+}
@@ -0,0 +1,211 @@
+package cartoland.utilities;
+
+import java.io.IOException;
+import java.io.Serial;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@code JiraClient} fetches pages of Mojang's bug tracker without blocking the caller. Every request goes through one
+ * {@link HttpClient}, which keeps connections alive and uses HTTP/2 when the server supports it, so lookups after the
+ * first one don't pay for a new TLS handshake. At most {@value #MAX_CONCURRENT_REQUESTS} requests are in flight at
+ * once, the rest wait in a queue without holding a thread. Can not be instantiated or inherited.
+ * <p>
+ * The bug tracker is walled off from the rest of the bot. At most {@code -Dcartoland.jiraMaxWaiting} requests, 16 by
+ * default, can wait for a slot; more are rejected at once. All requests also go through a {@link CircuitBreaker}
+ * named {@code jira}. Connection errors, timeouts and 5xx or 429 responses count as failures, and once it opens,
+ * requests are rejected without touching the network. Both kinds of rejection fail with {@link UnavailableException}.
+ * The probe of a half-open breaker is sent at once, without waiting for a slot, so that the breaker learns whether the
+ * tracker is back as soon as possible.
+ * <p>
+ * The browse URL can be changed with {@code -Dcartoland.jiraBrowseUrl}, to point the bot at a local stub.
+ *
+ * @since 2.2
+ * @author Alex Cai
+ * @see JiraHandle
+ */
+public final class JiraClient
+{
+	private JiraClient()
+	{
+		throw new AssertionError(IDs.YOU_SHALL_NOT_ACCESS);
+	}
+
+	/**
+	 * Thrown when a request is rejected without being sent, because the circuit breaker is open or too many requests
+	 * are waiting.
+	 *
+	 * @since 2.2
+	 * @author Alex Cai
+	 */
+	public static final class UnavailableException extends IOException
+	{
+		@Serial
+		private static final long serialVersionUID = 1_618033988749894848L;
+
+		private UnavailableException(String message)
+		{
+			super(message);
+		}
+	}
+
+	private static final String BROWSE_URL = System.getProperty("cartoland.jiraBrowseUrl", "https://bugs.mojang.com/browse/"); //可以用-Dcartoland.jiraBrowseUrl=網址 換成測試用的伺服器
+	private static final int MAX_CONCURRENT_REQUESTS = 4;
+	private static final int MAX_WAITING_REQUESTS = Math.max(0, Integer.getInteger("cartoland.jiraMaxWaiting", 16)); //可以用-Dcartoland.jiraMaxWaiting=數量 調整
+	private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(5L);
+	private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(10L); //從送出請求到讀完內容 不只是等到標頭
+
+	private static final HttpClient client = HttpClient.newBuilder()
+			.version(HttpClient.Version.HTTP_2) //伺服器不支援的話會自動降到HTTP/1.1
+			.followRedirects(HttpClient.Redirect.NORMAL)
+			.connectTimeout(CONNECT_TIMEOUT)
+			.build();
+	private static final Semaphore permits = new Semaphore(MAX_CONCURRENT_REQUESTS);
+	private static final Queue<Runnable> waiting = new ConcurrentLinkedQueue<>(); //等待空位的請求
+	private static final AtomicInteger admitted = new AtomicInteger(); //正在執行和排隊中的請求
+	private static final LongAdder bulkheadRejected = new LongAdder();
+	private static final CircuitBreaker breaker = new CircuitBreaker("jira", 5, 30_000L); //連續失敗5次後 30秒內直接拒絕
+
+	/**
+	 * The link of a bug.
+	 *
+	 * @param bugID Such as {@code MC-87984}.
+	 * @return Such as {@code https://bugs.mojang.com/browse/MC-87984}.
+	 * @since 2.2
+	 * @author Alex Cai
+	 */
+	public static String link(String bugID)
+	{
+		return BROWSE_URL + bugID.toUpperCase(Locale.ROOT);
+	}
+
+	/**
+	 * Fetch the page of a bug. The future completes on a thread of the HTTP client, so whatever follows should not
+	 * block for long. The body handler decides how much of the page is read; a permit is held until the body is
+	 * complete. If the whole response, body included, takes longer than 10 seconds, the exchange is cancelled and the
+	 * permit is released.
+	 *
+	 * @param bugID Such as {@code MC-87984}.
+	 * @param bodyHandler Reads the body, whatever the status code is.
+	 * @param <T> The type of the body.
+	 * @return The response, or an {@link IOException} if the server can't be reached or doesn't answer in time, or
+	 * an {@link UnavailableException} if the request was rejected.
+	 * @since 2.2
+	 * @author Alex Cai
+	 */
+	public static <T> CompletableFuture<HttpResponse<T>> fetch(String bugID, HttpResponse.BodyHandler<T> bodyHandler)
+	{
+		HttpRequest request = HttpRequest.newBuilder(URI.create(link(bugID)))
+				.timeout(REQUEST_TIMEOUT)
+				.header("Accept", "text/html")
+				.GET()
+				.build();
+		if (admitted.incrementAndGet() > MAX_CONCURRENT_REQUESTS + MAX_WAITING_REQUESTS) //排隊的太多了 先檢查這個 才不會浪費斷路器的探測
+		{
+			admitted.decrementAndGet();
+			bulkheadRejected.increment();
+			return CompletableFuture.failedFuture(new UnavailableException("Too many requests to the bug tracker"));
+		}
+		long permit = breaker.tryAcquire();
+		if (permit == CircuitBreaker.REJECTED) //最近一直失敗 不要再等逾時了
+		{
+			admitted.decrementAndGet();
+			return CompletableFuture.failedFuture(new UnavailableException("The bug tracker is unavailable"));
+		}
+		CompletableFuture<HttpResponse<T>> result = new CompletableFuture<>();
+		if (CircuitBreaker.isProbe(permit)) //探測不排隊 也不佔空位 否則要等前面斷路器打開前就排隊的請求逾時
+			send(request, bodyHandler, result, permit, false);
+		else
+		{
+			waiting.add(() -> send(request, bodyHandler, result, permit, true));
+			drain();
+		}
+		return result;
+	}
+
+	private static <T> void send(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler, CompletableFuture<HttpResponse<T>> result, long permit, boolean holdsSlot)
+	{
+		CompletableFuture<HttpResponse<T>> exchange;
+		try
+		{
+			exchange = client.sendAsync(request, bodyHandler);
+		}
+		catch (RuntimeException exception)
+		{
+			breaker.onFailure(permit);
+			release(holdsSlot);
+			result.completeExceptionally(new IOException(exception));
+			return;
+		}
+		//HttpRequest.timeout只限制等待標頭的時間 送出標頭後就卡住的伺服器會一直占著空位
+		exchange.copy().orTimeout(REQUEST_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS).whenComplete((page, exception) ->
+		{
+			if (exception instanceof TimeoutException)
+			{
+				exchange.cancel(true); //中斷連線 不再讀取內容
+				exception = new HttpTimeoutException("The bug tracker didn't finish the response in " + REQUEST_TIMEOUT.toSeconds() + " seconds");
+			}
+			if (exception == null && page.statusCode() < 500 && page.statusCode() != 429) //404也是正常的回應
+				breaker.onSuccess(permit);
+			else
+				breaker.onFailure(permit); //連線失敗 逾時 或伺服器有問題
+			release(holdsSlot);
+			if (exception == null)
+			{
+				result.complete(page);
+				return;
+			}
+			Throwable cause = exception instanceof CompletionException && exception.getCause() != null ? exception.getCause() : exception;
+			result.completeExceptionally(cause instanceof IOException ? cause : new IOException(cause));
+		});
+	}
+
+	private static void release(boolean holdsSlot)
+	{
+		admitted.decrementAndGet();
+		if (!holdsSlot) //探測沒有佔空位
+			return;
+		permits.release(); //先放出空位 再讓下一個請求開始
+		drain();
+	}
+
+	private static void drain()
+	{
+		//加入佇列的人和放出空位的人都會呼叫 所以不會有請求一直等下去
+		while (!waiting.isEmpty() && permits.tryAcquire())
+		{
+			Runnable task = waiting.poll();
+			if (task == null) //被別人拿走了
+				permits.release();
+			else
+				task.run();
+		}
+	}
+
+	/**
+	 * Render the state of the bulkhead and the circuit breaker.
+	 *
+	 * @return Requests in flight, waiting and rejected, then the circuit breakers.
+	 * @since 2.2
+	 * @author Alex Cai
+	 */
+	public static String render()
+	{
+		return String.format("Jira client: %d/%d in flight, %d waiting, %d rejected by bulkhead\n",
+				MAX_CONCURRENT_REQUESTS - permits.availablePermits(), MAX_CONCURRENT_REQUESTS, waiting.size(), bulkheadRejected.sum()) + CircuitBreaker.render();
+	}
+}
@@ -0,0 +1,334 @@
+package cartoland.utilities;
+
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Elements;
+
+import java.io.IOException;
+import java.io.Serial;
+import java.net.http.HttpResponse;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@code JiraHandle} parses issues of Mojang's bug tracker, fetched by {@link JiraClient}, for {@code /jira} and for
+ * the links in messages, and keeps the fields that they show in a small cache, so that a popular bug is not fetched
+ * and parsed again every time someone mentions it. Can not be instantiated or inherited.
+ * <p>
+ * The cache is keyed by the upper case bug ID and holds {@link Issue} records, not the HTML. An issue stays for 10
+ * minutes, and a bug that doesn't exist is remembered for 1 minute. When there are more than 256 bugs, the least
+ * recently used one is evicted. Connection errors are never cached. These can be changed with
+ * {@code -Dcartoland.jiraIssueTtlSeconds}, {@code -Dcartoland.jiraMissingTtlSeconds} and
+ * {@code -Dcartoland.jiraCacheSize}.
+ * <p>
+ * A page is not parsed into a whole DOM. {@link JiraPageExtractor} scans it as it arrives and keeps only the
+ * elements listed in {@link #TARGET_IDS}, and the download stops once all of them are found.
+ *
+ * @since 2.2
+ * @author Alex Cai
+ */
+public final class JiraHandle
+{
+	private JiraHandle()
+	{
+		throw new AssertionError(IDs.YOU_SHALL_NOT_ACCESS);
+	}
+
+	/**
+	 * The fields of an issue that are shown in Discord.
+	 *
+	 * @param bugID Such as {@code MC-87984}.
+	 * @param link The page of the issue.
+	 * @param summary The title.
+	 * @param description The full description, stripped.
+	 * @param status Such as {@code Resolved}.
+	 * @param resolution Such as {@code Fixed}.
+	 * @param priority Mojang priority.
+	 * @param firstAffectsVersion The first affected version.
+	 * @param lastAffectsVersion The last affected version.
+	 * @param fixVersions The versions that fixed the bug.
+	 * @param resolved When the bug was resolved, or null.
+	 * @param created When the bug was created, or null.
+	 * @param projectName Such as {@code Minecraft: Java Edition}.
+	 * @param projectAvatar The URL of the icon of the project, or null.
+	 * @since 2.2
+	 * @author Alex Cai
+	 */
+	public record Issue(String bugID, String link, String summary, String description, String status, String resolution,
+						String priority, String firstAffectsVersion, String lastAffectsVersion, String fixVersions,
+						ZonedDateTime resolved, ZonedDateTime created, String projectName, String projectAvatar)
+	{
+	}
+
+	/**
+	 * Thrown by {@link #issue(String)} when the bug doesn't exist, or its page has no issue.
+	 *
+	 * @since 2.2
+	 * @author Alex Cai
+	 */
+	public static final class NoIssueException extends IOException
+	{
+		@Serial
+		private static final long serialVersionUID = 2_718281828459045235L;
+
+		private final boolean pageExists;
+
+		private NoIssueException(String bugID, boolean pageExists)
+		{
+			super(bugID);
+			this.pageExists = pageExists;
+		}
+
+		/**
+		 * @return true if the page exists but has no issue content, false if the bug doesn't exist.
+		 */
+		public boolean pageExists()
+		{
+			return pageExists;
+		}
+	}
+
+	private static final long ISSUE_TTL_SECONDS = Long.getLong("cartoland.jiraIssueTtlSeconds", 10L * 60L); //可以用-Dcartoland.jiraIssueTtlSeconds=秒數 調整
+	private static final long MISSING_TTL_SECONDS = Long.getLong("cartoland.jiraMissingTtlSeconds", 60L); //可以用-Dcartoland.jiraMissingTtlSeconds=秒數 調整
+	private static final int MAX_ENTRIES = Math.max(1, Integer.getInteger("cartoland.jiraCacheSize", 256)); //可以用-Dcartoland.jiraCacheSize=數量 調整
+
+	private static final Map<String, CompletableFuture<Entry>> inFlight = new ConcurrentHashMap<>(); //正在查的bug
+
+	private static final LongAdder hits = new LongAdder();
+	private static final LongAdder misses = new LongAdder();
+	private static final LongAdder evictions = new LongAdder();
+	private static final LongAdder expirations = new LongAdder();
+
+	//accessOrder為true 讀取時移到最後 最前面的就是最久沒用的
+	private static final Map<String, Entry> cache = new LinkedHashMap<>(MAX_ENTRIES * 4 / 3 + 1, 0.75f, true)
+	{
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest)
+		{
+			if (size() <= MAX_ENTRIES)
+				return false;
+			evictions.increment();
+			return true;
+		}
+	};
+
+	static final String ISSUE_CONTENT_ID = "issue-content";
+	//parse會用到的元素 都在issue-content裡
+	static final Set<String> TARGET_IDS = Set.of("summary-val", "description-val", "opsbar-transitions_more",
+			"resolution-val", "customfield_12200-val", "versions-field", "fixfor-val", "resolutiondate-val", "created-val",
+			"project-name-val", "project-avatar");
+
+	//2015-09-03T13:30:22+0200
+	private static final DateTimeFormatter dateTimeFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ssZ");
+
+	/**
+	 * Get an issue, from the cache if it is still fresh. Never blocks: a miss is fetched by {@link JiraClient}, and
+	 * lookups of a bug that is already being fetched share the same request.
+	 *
+	 * @param bugID Such as {@code MC-87984}, case-insensitive.
+	 * @return The issue. Fails with {@link NoIssueException} if the bug doesn't exist or its page has no issue, or
+	 * with another {@link IOException} if the bug tracker can't be reached. Use {@link #cause(Throwable)} to unwrap.
+	 * @since 2.2
+	 * @author Alex Cai
+	 */
+	public static CompletableFuture<Issue> issue(String bugID)
+	{
+		String key = bugID.toUpperCase(Locale.ROOT);
+		Entry entry;
+		synchronized (cache)
+		{
+			entry = cache.get(key);
+			if (entry != null && entry.expiresAt - System.nanoTime() <= 0L) //過期了
+			{
+				cache.remove(key);
+				expirations.increment();
+				entry = null;
+			}
+		}
+		if (entry != null)
+		{
+			hits.increment();
+			return entry.toFuture(key);
+		}
+
+		misses.increment();
+		CompletableFuture<Entry> fetching = new CompletableFuture<>();
+		CompletableFuture<Entry> existing = inFlight.putIfAbsent(key, fetching);
+		if (existing != null) //已經有人在查這個bug了
+			return existing.thenCompose(fetched -> fetched.toFuture(key));
+
+		JiraClient.fetch(key, JiraHandle::bodySubscriber).thenApply(response -> parse(key, response)).whenComplete((fetched, exception) ->
+		{
+			if (fetched != null)
+			{
+				synchronized (cache)
+				{
+					cache.put(key, fetched); //先放進快取 再移出inFlight 中間來的人才找得到
+				}
+			}
+			inFlight.remove(key);
+			if (exception != null)
+				fetching.completeExceptionally(cause(exception));
+			else
+				fetching.complete(fetched);
+		});
+		return fetching.thenCompose(fetched -> fetched.toFuture(key));
+	}
+
+	/**
+	 * Unwrap the exception that a dependent stage of {@link #issue(String)} received.
+	 *
+	 * @param exception The exception, maybe a {@link CompletionException}.
+	 * @return The real cause.
+	 * @since 2.2
+	 * @author Alex Cai
+	 */
+	public static Throwable cause(Throwable exception)
+	{
+		while (exception instanceof CompletionException && exception.getCause() != null)
+			exception = exception.getCause();
+		return exception;
+	}
+
+	/**
+	 * Render the counters of the cache.
+	 *
+	 * @return One line with size, hit rate, evictions and expirations.
+	 * @since 2.2
+	 * @author Alex Cai
+	 */
+	public static String render()
+	{
+		int size;
+		synchronized (cache)
+		{
+			size = cache.size();
+		}
+		long hitCount = hits.sum();
+		long total = hitCount + misses.sum();
+		return String.format("Jira cache: %d/%d issues, hit rate %.1f%% (%d/%d), %d evicted, %d expired",
+				size, MAX_ENTRIES, total == 0L ? 0.0 : hitCount * 100.0 / total, hitCount, total, evictions.sum(), expirations.sum());
+	}
+
+	private static HttpResponse.BodySubscriber<JiraPageExtractor> bodySubscriber(HttpResponse.ResponseInfo responseInfo)
+	{
+		int statusCode = responseInfo.statusCode();
+		if (statusCode < 200 || statusCode >= 300) //錯誤頁面不需要內容
+			return HttpResponse.BodySubscribers.replacing(null);
+		Charset charset = responseInfo.headers().firstValue("Content-Type").map(JiraHandle::charsetOf).orElse(StandardCharsets.UTF_8);
+		return new JiraPageExtractor(ISSUE_CONTENT_ID, TARGET_IDS).subscriber(charset);
+	}
+
+	private static Charset charsetOf(String contentType)
+	{
+		//text/html;charset=UTF-8
+		for (String parameter : contentType.split(";"))
+		{
+			String[] pair = parameter.strip().split("=", 2);
+			if (pair.length == 2 && pair[0].equalsIgnoreCase("charset"))
+			{
+				try
+				{
+					return Charset.forName(pair[1].replace("\"", ""));
+				}
+				catch (IllegalCharsetNameException | UnsupportedCharsetException exception)
+				{
+					break;
+				}
+			}
+		}
+		return StandardCharsets.UTF_8;
+	}
+
+	private static Entry parse(String bugID, HttpResponse<JiraPageExtractor> response)
+	{
+		int statusCode = response.statusCode();
+		if (statusCode == 404) //沒有這個bug
+			return new Entry(null, false, MISSING_TTL_SECONDS);
+		if (statusCode < 200 || statusCode >= 300) //伺服器有問題 不要記住
+			throw new CompletionException(new IOException("HTTP status " + statusCode + " from " + response.uri()));
+
+		String link = JiraClient.link(bugID);
+		JiraPageExtractor issueContent = response.body(); //只有issue-content裡的元素
+		if (!issueContent.containerFound()) //如果不存在id為issue-content的標籤
+			return new Entry(null, true, MISSING_TTL_SECONDS);
+
+		Element versionsField = issueContent.element("versions-field");
+		Element allAffectsVersions = versionsField != null ? versionsField : new Element("span");
+		//此處不用getFirst()和getLast() firstElementChild()lastElementChild()會在沒有元素時回傳null 而不是擲出NoSuchElementException
+		Issue issue = new Issue(bugID, link,
+				textValue(issueContent.element("summary-val")),
+				textValue(issueContent.element("description-val")).strip(),
+				textValue(issueContent.element("opsbar-transitions_more")),
+				textValue(issueContent.element("resolution-val")),
+				textValue(issueContent.element("customfield_12200-val")),
+				textValue(allAffectsVersions.firstElementChild()),
+				textValue(allAffectsVersions.lastElementChild()),
+				textValue(issueContent.element("fixfor-val")),
+				timeValue(issueContent.element("resolutiondate-val")),
+				timeValue(issueContent.element("created-val")),
+				textValue(issueContent.element("project-name-val")),
+				attributeValue(issueContent.element("project-avatar"), "src", null));
+		return new Entry(issue, true, ISSUE_TTL_SECONDS);
+	}
+
+	private static String textValue(Element element)
+	{
+		return element != null ? element.text() : "";
+	}
+
+	private static ZonedDateTime timeValue(Element element)
+	{
+		if (element == null)
+			return null;
+		Elements timeTags = element.getElementsByTag("time"); //找尋裡面的<time>
+		if (timeTags.isEmpty())
+			return null;
+		//取得<time>裡的datetime後 透過Formatter轉換為ZonedDateTime物件
+		try
+		{
+			return ZonedDateTime.parse(attributeValue(timeTags.getFirst(), "datetime", "1970-01-01T00:00:00+0000"), dateTimeFormatter);
+		}
+		catch (DateTimeParseException e)
+		{
+			return null;
+		}
+	}
+
+	private static String attributeValue(Element element, String attributeKey, String defaultValue)
+	{
+		return element != null ? element.attr(attributeKey) : defaultValue;
+	}
+
+	/**
+	 * An issue, or a bug that has no issue, and when it expires.
+	 */
+	private static final class Entry
+	{
+		private final Issue issue; //null代表沒有這個bug
+		private final boolean pageExists;
+		private final long expiresAt;
+
+		private Entry(Issue issue, boolean pageExists, long ttlSeconds)
+		{
+			this.issue = issue;
+			this.pageExists = pageExists;
+			expiresAt = System.nanoTime() + TimeUnit.SECONDS.toNanos(ttlSeconds);
+		}
+
+		private CompletableFuture<Issue> toFuture(String bugID)
+		{
+			return issue != null ? CompletableFuture.completedFuture(issue) : CompletableFuture.failedFuture(new NoIssueException(bugID, pageExists));
+		}
+	}
+}
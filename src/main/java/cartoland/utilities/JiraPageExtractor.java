@@ -0,0 +1,501 @@
+package cartoland.utilities;
+
+import org.jsoup.nodes.Element;
+import org.jsoup.nodes.Node;
+import org.jsoup.parser.Parser;
+
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+
+/**
+ * {@code JiraPageExtractor} scans the HTML of a Jira issue page once, as it arrives, and keeps only the source of the
+ * few elements that are needed, found by their IDs inside the container element. Only those small fragments are
+ * parsed by Jsoup later, instead of a DOM of the whole page. As soon as every element is found, or the container is
+ * closed, the rest of the response is not read at all.
+ * <p>
+ * The scanner only understands as much HTML as it needs: tags and their attributes, comments, and the raw text of
+ * {@code script} and {@code style}. The end of an element is found by counting the start and end tags of the same
+ * name, so a missing {@code </p>} inside it does no harm. Not thread safe, but the HTTP client calls a subscriber
+ * from one thread at a time.
+ *
+ * @since 2.2
+ * @author Alex Cai
+ * @see JiraHandle
+ */
+final class JiraPageExtractor
+{
+	private static final Set<String> VOID_ELEMENTS = Set.of("area", "base", "br", "col", "embed", "hr", "img", "input", "link", "meta", "param", "source", "track", "wbr");
+	private static final Map<String, String> FRAGMENT_CONTEXTS = Map.of("td", "tr", "th", "tr", "tr", "tbody", "tbody", "table",
+			"thead", "table", "tfoot", "table", "caption", "table", "colgroup", "table", "option", "select");
+	private static final Set<String> RAW_TEXT_ELEMENTS = Set.of("script", "style", "textarea", "title");
+
+	//掃描的狀態
+	private static final byte TEXT = 0;
+	private static final byte TAG_OPEN = 1; //剛讀到<
+	private static final byte TAG = 2; //在<和>之間
+	private static final byte COMMENT = 3;
+	private static final byte RAW_TEXT = 4; //script或style的內容
+
+	private final String containerID;
+	private final Set<String> targetIDs;
+	private final Map<String, String> fragments = new HashMap<>(); //ID對應到元素的原始碼
+	private final List<Capture> captures = new ArrayList<>(); //正在記錄的元素 可以巢狀
+	private final StringBuilder recording = new StringBuilder(); //有元素在記錄時才會累積
+	private final StringBuilder tag = new StringBuilder();
+
+	private byte state = TEXT;
+	private char quote; //標籤內的引號 0代表不在引號內
+	private String rawTextEnd; //像是"</script"
+	private int rawTextMatched; //rawTextEnd已經符合了幾個字元
+	private int commentDashes; //註解結尾連續的-
+	private boolean inContainer;
+	private boolean containerFound;
+	private String containerName;
+	private int containerDepth;
+	private boolean done;
+
+	/**
+	 * @param containerID The ID of the element that holds every target, elements outside of it are ignored.
+	 * @param targetIDs The IDs of the elements to keep.
+	 */
+	JiraPageExtractor(String containerID, Set<String> targetIDs)
+	{
+		this.containerID = containerID;
+		this.targetIDs = targetIDs;
+	}
+
+	/**
+	 * Scan more characters of the page.
+	 *
+	 * @param chars The next characters.
+	 * @return true if nothing after this is needed.
+	 */
+	boolean feed(CharSequence chars)
+	{
+		for (int i = 0, length = chars.length(); i < length && !done; i++)
+			feed(chars.charAt(i));
+		return done;
+	}
+
+	/**
+	 * Finish scanning, an element that is still open at the end of the page ends there.
+	 */
+	void finish()
+	{
+		for (Capture capture : captures)
+			fragments.putIfAbsent(capture.id, recording.substring(capture.start));
+		captures.clear();
+		done = true;
+	}
+
+	/**
+	 * @return If the container was found.
+	 */
+	boolean containerFound()
+	{
+		return containerFound;
+	}
+
+	/**
+	 * Parse the fragment of an element.
+	 *
+	 * @param id The ID of the element.
+	 * @return The element, or null if the container doesn't have it.
+	 */
+	Element element(String id)
+	{
+		String fragment = fragments.get(id);
+		if (fragment == null)
+			return null;
+		//<td>之類的元素不能直接放在<body>裡 要給它正確的父元素 不然會被Jsoup丟掉
+		Element context = new Element(FRAGMENT_CONTEXTS.getOrDefault(fragmentName(fragment), "body"));
+		for (Node node : Parser.parseFragment(fragment, context, ""))
+			if (node instanceof Element element)
+				return id.equals(element.id()) ? element : element.getElementById(id);
+		return null;
+	}
+
+	/**
+	 * Create a subscriber that feeds the body of a response to this extractor, and cancels the rest of the body
+	 * when it is no longer needed.
+	 *
+	 * @param charset The charset of the body.
+	 * @return The subscriber, whose body is this extractor.
+	 */
+	HttpResponse.BodySubscriber<JiraPageExtractor> subscriber(Charset charset)
+	{
+		return new Subscriber(charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE));
+	}
+
+	private void feed(char c)
+	{
+		switch (state)
+		{
+			case TEXT ->
+			{
+				if (c == '<')
+				{
+					tag.setLength(0);
+					tag.append(c);
+					state = TAG_OPEN;
+				}
+				else
+					record(c);
+			}
+			case TAG_OPEN ->
+			{
+				if (Character.isLetter(c) || c == '/' || c == '!' || c == '?')
+				{
+					tag.append(c);
+					quote = 0;
+					state = TAG;
+				}
+				else //像是"a < b" 不是標籤
+				{
+					record('<');
+					state = TEXT;
+					feed(c);
+				}
+			}
+			case TAG ->
+			{
+				tag.append(c);
+				if (tag.length() == 4 && "<!--".contentEquals(tag)) //註解裡的>不是標籤的結尾
+				{
+					recordTag();
+					commentDashes = 0;
+					state = COMMENT;
+				}
+				else if (quote != 0)
+				{
+					if (c == quote)
+						quote = 0;
+				}
+				else if ((c == '"' || c == '\'') && tag.charAt(tag.length() - 2) == '=') //屬性值的引號
+					quote = c;
+				else if (c == '>')
+				{
+					state = TEXT;
+					processTag();
+				}
+			}
+			case COMMENT ->
+			{
+				record(c);
+				if (c == '>' && commentDashes >= 2)
+					state = TEXT;
+				commentDashes = c == '-' ? commentDashes + 1 : 0;
+			}
+			case RAW_TEXT ->
+			{
+				record(c);
+				if (Character.toLowerCase(c) == rawTextEnd.charAt(rawTextMatched))
+					rawTextMatched++;
+				else
+					rawTextMatched = c == '<' ? 1 : 0;
+				if (rawTextMatched == rawTextEnd.length()) //讀到</script 交給一般的標籤處理
+				{
+					if (!captures.isEmpty())
+						recording.setLength(recording.length() - rawTextEnd.length());
+					tag.setLength(0);
+					tag.append(rawTextEnd);
+					quote = 0;
+					state = TAG;
+				}
+			}
+		}
+	}
+
+	private void processTag()
+	{
+		if (tag.charAt(1) == '!' || tag.charAt(1) == '?') //<!DOCTYPE> 之類的
+		{
+			recordTag();
+			return;
+		}
+
+		boolean endTag = tag.charAt(1) == '/';
+		String name = tagName(endTag ? 2 : 1);
+		if (endTag)
+		{
+			recordTag();
+			for (int i = captures.size() - 1; i >= 0; i--)
+			{
+				Capture capture = captures.get(i);
+				if (capture.name.equals(name) && --capture.depth == 0) //這個元素結束了
+				{
+					fragments.put(capture.id, recording.substring(capture.start));
+					captures.remove(i);
+				}
+			}
+			if (captures.isEmpty())
+				recording.setLength(0);
+			if (inContainer && containerName.equals(name) && --containerDepth == 0) //容器結束了 後面都不需要
+			{
+				inContainer = false;
+				finish();
+			}
+			else if (captures.isEmpty() && fragments.size() == targetIDs.size()) //全部都找到了
+				done = true;
+			return;
+		}
+
+		boolean selfClosing = VOID_ELEMENTS.contains(name) || tag.charAt(tag.length() - 2) == '/';
+		for (Capture capture : captures) //同名的子元素
+			if (capture.name.equals(name) && !selfClosing)
+				capture.depth++;
+		if (inContainer && containerName.equals(name) && !selfClosing)
+			containerDepth++;
+
+		String id = attribute("id");
+		if (id != null)
+		{
+			if (!containerFound && id.equals(containerID))
+			{
+				containerFound = true;
+				if (selfClosing) //空的容器
+				{
+					done = true;
+					return;
+				}
+				inContainer = true;
+				containerName = name;
+				containerDepth = 1;
+			}
+			else if (inContainer && targetIDs.contains(id) && !fragments.containsKey(id) && !isCapturing(id))
+				captures.add(new Capture(id, name, recording.length()));
+		}
+		recordTag();
+
+		if (selfClosing) //沒有內容的元素 標籤本身就是全部
+		{
+			for (int i = captures.size() - 1; i >= 0; i--)
+			{
+				Capture capture = captures.get(i);
+				if (capture.depth == 1 && capture.start == recording.length() - tag.length())
+				{
+					fragments.put(capture.id, recording.substring(capture.start));
+					captures.remove(i);
+				}
+			}
+			if (captures.isEmpty())
+			{
+				recording.setLength(0);
+				if (fragments.size() == targetIDs.size())
+					done = true;
+			}
+		}
+		else if (RAW_TEXT_ELEMENTS.contains(name))
+		{
+			rawTextEnd = "</" + name;
+			rawTextMatched = 0;
+			state = RAW_TEXT;
+		}
+	}
+
+	private static String fragmentName(String fragment)
+	{
+		int end = 1; //片段一定是<開頭
+		while (end < fragment.length() && Character.isLetterOrDigit(fragment.charAt(end)))
+			end++;
+		return fragment.substring(1, end).toLowerCase(Locale.ROOT);
+	}
+
+	private boolean isCapturing(String id)
+	{
+		for (Capture capture : captures)
+			if (capture.id.equals(id))
+				return true;
+		return false;
+	}
+
+	private String tagName(int begin)
+	{
+		int end = begin;
+		while (end < tag.length() && !Character.isWhitespace(tag.charAt(end)) && tag.charAt(end) != '/' && tag.charAt(end) != '>')
+			end++;
+		return tag.substring(begin, end).toLowerCase(Locale.ROOT);
+	}
+
+	private String attribute(String attributeName)
+	{
+		int i = 1;
+		while (i < tag.length() && !Character.isWhitespace(tag.charAt(i)) && tag.charAt(i) != '>' && tag.charAt(i) != '/')
+			i++; //跳過標籤名稱
+		int length = tag.length() - 1; //不包含最後的>
+		while (i < length)
+		{
+			char c = tag.charAt(i);
+			if (Character.isWhitespace(c) || c == '/')
+			{
+				i++;
+				continue;
+			}
+			int nameBegin = i;
+			while (i < length && !Character.isWhitespace(tag.charAt(i)) && tag.charAt(i) != '=' && tag.charAt(i) != '/')
+				i++;
+			String name = tag.substring(nameBegin, i);
+			while (i < length && Character.isWhitespace(tag.charAt(i)))
+				i++;
+			if (i >= length || tag.charAt(i) != '=') //沒有值的屬性
+				continue;
+			i++;
+			while (i < length && Character.isWhitespace(tag.charAt(i)))
+				i++;
+			int valueBegin;
+			int valueEnd;
+			if (i < length && (tag.charAt(i) == '"' || tag.charAt(i) == '\''))
+			{
+				char valueQuote = tag.charAt(i);
+				valueBegin = ++i;
+				while (i < length && tag.charAt(i) != valueQuote)
+					i++;
+				valueEnd = i++;
+			}
+			else
+			{
+				valueBegin = i;
+				while (i < length && !Character.isWhitespace(tag.charAt(i)))
+					i++;
+				valueEnd = i;
+			}
+			if (name.equalsIgnoreCase(attributeName))
+				return tag.substring(valueBegin, Math.min(valueEnd, length));
+		}
+		return null;
+	}
+
+	private void record(char c)
+	{
+		if (!captures.isEmpty())
+			recording.append(c);
+	}
+
+	private void recordTag()
+	{
+		if (!captures.isEmpty())
+			recording.append(tag);
+	}
+
+	private static final class Capture
+	{
+		private final String id;
+		private final String name;
+		private final int start; //在recording裡的開頭
+		private int depth = 1;
+
+		private Capture(String id, String name, int start)
+		{
+			this.id = id;
+			this.name = name;
+			this.start = start;
+		}
+	}
+
+	/**
+	 * Decodes the body as it arrives and feeds it to the extractor.
+	 */
+	private final class Subscriber implements HttpResponse.BodySubscriber<JiraPageExtractor>
+	{
+		private final CompletableFuture<JiraPageExtractor> body = new CompletableFuture<>();
+		private final CharsetDecoder decoder;
+		private ByteBuffer leftover = ByteBuffer.allocate(0); //被切斷的多位元組字元
+		private final CharBuffer chars = CharBuffer.allocate(8192);
+		private Flow.Subscription subscription;
+
+		private Subscriber(CharsetDecoder decoder)
+		{
+			this.decoder = decoder;
+		}
+
+		@Override
+		public CompletionStage<JiraPageExtractor> getBody()
+		{
+			return body;
+		}
+
+		@Override
+		public void onSubscribe(Flow.Subscription subscription)
+		{
+			this.subscription = subscription;
+			subscription.request(1L);
+		}
+
+		@Override
+		public void onNext(List<ByteBuffer> buffers)
+		{
+			if (body.isDone())
+				return;
+			try
+			{
+				for (ByteBuffer buffer : buffers)
+				{
+					if (decode(buffer, false))
+					{
+						body.complete(JiraPageExtractor.this);
+						subscription.cancel(); //不用再讀了
+						return;
+					}
+				}
+			}
+			catch (RuntimeException exception)
+			{
+				body.completeExceptionally(exception);
+				subscription.cancel();
+				return;
+			}
+			subscription.request(1L);
+		}
+
+		@Override
+		public void onError(Throwable throwable)
+		{
+			body.completeExceptionally(throwable);
+		}
+
+		@Override
+		public void onComplete()
+		{
+			if (body.isDone())
+				return;
+			decode(ByteBuffer.allocate(0), true);
+			finish();
+			body.complete(JiraPageExtractor.this);
+		}
+
+		private boolean decode(ByteBuffer buffer, boolean endOfInput)
+		{
+			ByteBuffer input = buffer;
+			if (leftover.hasRemaining()) //接上一次剩下的位元組
+			{
+				input = ByteBuffer.allocate(leftover.remaining() + buffer.remaining());
+				input.put(leftover).put(buffer).flip();
+			}
+			CoderResult result;
+			do
+			{
+				result = decoder.decode(input, chars, endOfInput); //OVERFLOW代表chars滿了 處理完再繼續
+				if (endOfInput && result.isUnderflow())
+					decoder.flush(chars);
+				chars.flip();
+				boolean finished = feed(chars);
+				chars.clear();
+				if (finished)
+					return true;
+			}
+			while (result.isOverflow());
+			//UNDERFLOW 剩下的位元組不足一個字元 等下一塊再解碼
+			leftover = input.hasRemaining() ? ByteBuffer.allocate(input.remaining()).put(input).flip() : ByteBuffer.allocate(0);
+			return false;
+		}
+	}
+}
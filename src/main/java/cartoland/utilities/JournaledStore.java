@@ -0,0 +1,933 @@
+package cartoland.utilities;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.locks.StampedLock;
+import java.util.zip.CRC32;
+
+/**
+ * {@code JournaledStore} is the parent class of every collection that was registered by
+ * {@link FileHandle#journaledMap(String)} or {@link FileHandle#journaledSet(String)}. Every mutation of the
+ * collection will be appended to a journal file before it was applied, so that a crash only loses the few writes
+ * that didn't reach the operating system. When the store is loaded by {@link #load()}, the snapshot ({@code .ser}
+ * file) is deserialized and the journal is replayed on top of it; until then, every method of the collection waits
+ * for the loading. The snapshot scheduler in {@link FileHandle} rewrites the snapshot of the
+ * stores that are dirty (changed since the last snapshot) in the background, and clears the journal.
+ * <p>
+ * A record in the journal looks like: {@code [int length][int crc32][byte operation][key][value]}. Since every
+ * operation carries the whole new state of a key, replaying a record twice is harmless, which is why the journal can
+ * be replayed on top of a snapshot that already contains some of its records.
+ * <p>
+ * By default, the snapshot is written with Java serialization. A store can use a {@link Codec} instead, which also
+ * encodes the values inside journal records.
+ *
+ * @since 2.2
+ * @author Alex Cai
+ */
+abstract class JournaledStore
+{
+	/**
+	 * A hand-written format of a store, used instead of Java serialization.
+	 *
+	 * @since 2.2
+	 * @author Alex Cai
+	 */
+	interface Codec
+	{
+		/**
+		 * Read the whole content from the snapshot file.
+		 *
+		 * @param fileName The name of the snapshot file.
+		 * @return The content, or null if the file doesn't exist.
+		 */
+		Object decode(String fileName) throws IOException;
+
+		/**
+		 * Encode the whole content into the bytes of the snapshot file.
+		 */
+		byte[] encode(Object content) throws IOException;
+
+		/**
+		 * If this codec can write the value into a journal record.
+		 */
+		boolean accepts(Object value);
+
+		void writeValue(DataOutputStream output, Object value) throws IOException;
+
+		Object readValue(DataInputStream input) throws IOException;
+	}
+
+	static final byte PUT = 0;
+	static final byte REMOVE = 1;
+	static final byte ADD = 2;
+	static final byte CLEAR = 3;
+
+	private static final byte NULL_TAG = 0;
+	private static final byte LONG_TAG = 1;
+	private static final byte STRING_TAG = 2;
+	private static final byte OBJECT_TAG = 3;
+	private static final byte CODEC_TAG = 4;
+
+	private final String fileName; //快照的檔名
+	private final Codec codec; //null代表使用Java的串聯化
+	private final Path journalPath; //日誌
+	private final Path oldJournalPath; //快照中的舊日誌
+	private FileChannel journalChannel;
+	private final ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(64); //重複使用的紀錄緩衝
+	private final DataOutputStream recordOutput = new DataOutputStream(recordBytes);
+	private final ByteBuffer header = ByteBuffer.allocate(Integer.BYTES + Integer.BYTES); //長度和CRC
+	private final CRC32 crc = new CRC32();
+	private volatile boolean dirty; //上次快照後是否有修改過
+	private volatile boolean loaded; //快照和日誌是否已經讀取完成
+	private volatile long loadNanos; //讀取花費的時間
+
+	//快照的統計資料 只會被快照的執行緒寫入
+	private volatile long snapshots;
+	private volatile long lastSnapshotNanos;
+	private volatile long bytesWritten;
+
+	JournaledStore(String fileName, Codec codec)
+	{
+		this.fileName = fileName;
+		this.codec = codec;
+		journalPath = Paths.get(fileName + ".journal");
+		oldJournalPath = Paths.get(fileName + ".journal.old");
+	}
+
+	String fileName()
+	{
+		return fileName;
+	}
+
+	long snapshots()
+	{
+		return snapshots;
+	}
+
+	long lastSnapshotNanos()
+	{
+		return lastSnapshotNanos;
+	}
+
+	long bytesWritten()
+	{
+		return bytesWritten;
+	}
+
+	boolean isLoaded()
+	{
+		return loaded;
+	}
+
+	long loadNanos()
+	{
+		return loadNanos;
+	}
+
+	/**
+	 * The collection that is going to be written into the snapshot file. It must be the same type as the one that was
+	 * deserialized, so the {@code .ser} files stay compatible.
+	 *
+	 * @return The underlying collection.
+	 */
+	abstract Object content();
+
+	/**
+	 * Set the underlying collection from the content of the snapshot file.
+	 *
+	 * @param content The content of the snapshot file, or null if it can't be read.
+	 */
+	abstract void fill(Object content);
+
+	/**
+	 * Apply a record that was read from the journal to the underlying collection, without journaling it again.
+	 */
+	abstract void apply(byte operation, Object key, Object value);
+
+	/**
+	 * Read the snapshot file, replay the journals and open the journal for appending, then wake up every thread that
+	 * is waiting in {@link #awaitLoaded()}. Called exactly once, by the thread that registered this store, while the
+	 * snapshot scheduler may already see it.
+	 */
+	final void load()
+	{
+		long begin = System.nanoTime();
+		Object content;
+		if (codec == null)
+			content = FileHandle.deserialize(fileName);
+		else
+		{
+			try
+			{
+				content = codec.decode(fileName);
+			}
+			catch (IOException exception)
+			{
+				FileHandle.log(exception);
+				content = null; //當作沒有檔案
+			}
+		}
+		fill(content);
+		open();
+		loadNanos = System.nanoTime() - begin;
+
+		synchronized (this)
+		{
+			loaded = true;
+			notifyAll(); //叫醒在等待讀取的執行緒
+		}
+	}
+
+	/**
+	 * Block until {@link #load()} finished. Every method of the collection calls this first, which only costs a
+	 * volatile read after the store was loaded.
+	 */
+	final void awaitLoaded()
+	{
+		if (loaded) //絕大多數的情況
+			return;
+
+		boolean interrupted = false;
+		synchronized (this)
+		{
+			while (!loaded)
+			{
+				try
+				{
+					wait();
+				}
+				catch (InterruptedException exception)
+				{
+					interrupted = true; //讀取完之前不能回傳 所以稍後再恢復中斷狀態
+				}
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+	}
+
+	/**
+	 * Replay the old journal (if the last snapshot didn't finish) and the journal, then open the journal for
+	 * appending. Must be called before any mutation.
+	 */
+	private void open()
+	{
+		replay(oldJournalPath); //上次快照未完成時留下的舊日誌 之後不會再寫入 所以不必截斷
+		long validLength = replay(journalPath);
+		dirty = Files.exists(oldJournalPath) || sizeOf(journalPath) > 0L; //有日誌 就代表.ser檔不是最新的
+		try
+		{
+			if (validLength < sizeOf(journalPath)) //截掉損毀的結尾 不然新的紀錄會接在它後面 下次重放時就讀不到了
+			{
+				try (FileChannel tornChannel = FileChannel.open(journalPath, StandardOpenOption.WRITE))
+				{
+					tornChannel.truncate(validLength);
+					tornChannel.force(true);
+				}
+				FileHandle.log(fileName, " journal truncated to ", validLength, " bytes");
+			}
+			journalChannel = FileChannel.open(journalPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		}
+		catch (IOException exception)
+		{
+			FileHandle.log(exception); //無法開啟日誌 之後的修改只會在關機時寫入
+		}
+	}
+
+	/**
+	 * Replay the old journal and the journal without opening the journal for appending.
+	 */
+	final void replayJournals()
+	{
+		replay(oldJournalPath); //上次快照未完成時留下的舊日誌
+		replay(journalPath);
+	}
+
+	private static byte[] readBytes(DataInputStream input) throws IOException
+	{
+		int length = input.readInt();
+		if (length < 0 || length > input.available()) //紀錄的內容都在記憶體裡 available就是剩下的長度
+			throw new IOException("Corrupt length " + length + " in a journal record");
+		byte[] bytes = new byte[length];
+		input.readFully(bytes);
+		return bytes;
+	}
+
+	private static long sizeOf(Path path)
+	{
+		try
+		{
+			return Files.exists(path) ? Files.size(path) : 0L;
+		}
+		catch (IOException exception)
+		{
+			return 1L; //不確定的話 就當作有紀錄
+		}
+	}
+
+	/**
+	 * Replay a journal until its end or the first torn or corrupt record.
+	 *
+	 * @return The length of the valid records at the beginning of the journal.
+	 */
+	private long replay(Path path)
+	{
+		if (!Files.exists(path))
+			return 0L;
+
+		int records = 0;
+		long validLength = 0L; //最後一筆完整紀錄的結尾
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path))))
+		{
+			long fileSize = Files.size(path);
+			CRC32 replayCRC = new CRC32();
+			while (true)
+			{
+				int length;
+				try
+				{
+					length = input.readInt();
+				}
+				catch (EOFException endOfJournal) //正常結束
+				{
+					break;
+				}
+				int checksum = input.readInt();
+				if (length <= 0 || length > fileSize - validLength - header.capacity()) //長度本身就損毀了 不要照著它配置陣列
+				{
+					FileHandle.log(fileName, " journal has a corrupt record length ", length, " after ", records, " records");
+					break;
+				}
+				byte[] payload = new byte[length];
+				input.readFully(payload); //寫到一半就當機的紀錄 會在這裡擲出EOFException
+				replayCRC.reset();
+				replayCRC.update(payload);
+				if ((int) replayCRC.getValue() != checksum) //損毀的紀錄 之後的都不能相信了
+				{
+					FileHandle.log(fileName, " journal has a corrupt record after ", records, " records");
+					break;
+				}
+
+				DataInputStream payloadInput = new DataInputStream(new ByteArrayInputStream(payload));
+				byte operation = payloadInput.readByte();
+				Object key = readTagged(payloadInput);
+				Object value = readTagged(payloadInput);
+				apply(operation, key, value);
+				records++;
+				validLength += header.capacity() + length;
+			}
+		}
+		catch (EOFException torn) //最後一筆紀錄不完整
+		{
+			FileHandle.log(fileName, " journal ends with a torn record after ", records, " records");
+		}
+		catch (IOException | ClassNotFoundException exception)
+		{
+			FileHandle.log(exception);
+		}
+		return validLength;
+	}
+
+	/**
+	 * Append a record to the journal. Caller must hold the lock of this store.
+	 */
+	final void journal(byte operation, Object key, Object value)
+	{
+		dirty = true; //即使日誌寫入失敗 快照也會寫入這次修改
+		if (journalChannel == null) //日誌開啟失敗
+			return;
+		try
+		{
+			recordBytes.reset();
+			recordOutput.writeByte(operation);
+			writeTagged(recordOutput, key);
+			writeTagged(recordOutput, value);
+			recordOutput.flush();
+
+			byte[] payload = recordBytes.toByteArray();
+			crc.reset();
+			crc.update(payload);
+			header.clear();
+			header.putInt(payload.length).putInt((int) crc.getValue()).flip();
+			ByteBuffer[] buffers = { header, ByteBuffer.wrap(payload) };
+			while (buffers[1].hasRemaining()) //一次write 讓紀錄盡可能完整地抵達作業系統
+				journalChannel.write(buffers);
+		}
+		catch (IOException exception)
+		{
+			FileHandle.log(exception);
+		}
+	}
+
+	/**
+	 * Rewrite the snapshot file and clear the journal if this store is dirty. The snapshot is taken and the journal
+	 * is rotated while holding the lock, then the file is written by {@link FileHandle#writeAtomically(String, byte[])}
+	 * without holding the lock, so mutations only wait for the in-memory part.
+	 */
+	final void snapshot()
+	{
+		if (!loaded || !dirty)
+			return; //還沒讀取完成 或沒有新的變動 不必重寫
+
+		long begin = System.nanoTime();
+		byte[] snapshot;
+		boolean rotated;
+		synchronized (this)
+		{
+			try
+			{
+				snapshot = snapshotBytes();
+			}
+			catch (IOException exception)
+			{
+				FileHandle.log(exception);
+				return;
+			}
+			dirty = false; //在這之後的修改 會在下一次快照寫入
+			rotated = rotate();
+		}
+
+		try
+		{
+			FileHandle.writeAtomically(fileName, snapshot);
+			Files.deleteIfExists(oldJournalPath); //快照已經包含舊日誌的內容了
+			if (!rotated) //上一次的舊日誌還在 所以這次沒有輪替 日誌內的紀錄已被快照包含 重放也不會有影響
+				rotate();
+		}
+		catch (IOException exception)
+		{
+			dirty = true; //下次再試 舊日誌保留 下次啟動時依然能重放
+			FileHandle.log(exception);
+			return;
+		}
+
+		lastSnapshotNanos = System.nanoTime() - begin;
+		bytesWritten += snapshot.length;
+		snapshots++;
+	}
+
+	private synchronized boolean rotate()
+	{
+		if (journalChannel == null || Files.exists(oldJournalPath)) //上一次的快照沒有完成
+			return false;
+		try
+		{
+			journalChannel.close();
+			Files.move(journalPath, oldJournalPath);
+			journalChannel = FileChannel.open(journalPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+			return true;
+		}
+		catch (IOException exception)
+		{
+			FileHandle.log(exception);
+			return false;
+		}
+	}
+
+	final synchronized void close()
+	{
+		awaitLoaded(); //以免讀取完後才開啟日誌
+		if (journalChannel == null)
+			return;
+		try
+		{
+			journalChannel.close();
+		}
+		catch (IOException exception)
+		{
+			FileHandle.log(exception);
+		}
+		journalChannel = null;
+	}
+
+	private byte[] snapshotBytes() throws IOException
+	{
+		if (codec != null)
+			return codec.encode(content());
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream objectStream = new ObjectOutputStream(bytes))
+		{
+			objectStream.writeObject(content());
+		}
+		return bytes.toByteArray();
+	}
+
+	private void writeTagged(DataOutputStream output, Object object) throws IOException
+	{
+		if (codec != null && codec.accepts(object))
+		{
+			output.writeByte(CODEC_TAG);
+			codec.writeValue(output, object);
+			return;
+		}
+
+		switch (object)
+		{
+			case null -> output.writeByte(NULL_TAG);
+			case Long l -> //最常見的 使用者ID
+			{
+				output.writeByte(LONG_TAG);
+				output.writeLong(l);
+			}
+			case String s ->
+			{
+				byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+				output.writeByte(STRING_TAG);
+				output.writeInt(utf8.length);
+				output.write(utf8);
+			}
+			default -> //其他的就交給Java的串聯化
+			{
+				ByteArrayOutputStream objectBytes = new ByteArrayOutputStream();
+				try (ObjectOutputStream objectStream = new ObjectOutputStream(objectBytes))
+				{
+					objectStream.writeObject(object);
+				}
+				output.writeByte(OBJECT_TAG);
+				output.writeInt(objectBytes.size());
+				objectBytes.writeTo(output);
+			}
+		}
+	}
+
+	private Object readTagged(DataInputStream input) throws IOException, ClassNotFoundException
+	{
+		byte tag = input.readByte();
+		switch (tag)
+		{
+			case CODEC_TAG:
+				if (codec == null)
+					throw new IOException(fileName + " journal has a codec record, but the store has no codec");
+				return codec.readValue(input);
+			case LONG_TAG:
+				return input.readLong();
+			case STRING_TAG:
+				return new String(readBytes(input), StandardCharsets.UTF_8);
+			case OBJECT_TAG:
+			{
+				try (ObjectInputStream objectStream = new ObjectInputStream(new ByteArrayInputStream(readBytes(input))))
+				{
+					return objectStream.readObject();
+				}
+			}
+			default:
+				return null;
+		}
+	}
+}
+
+/**
+ * A {@link Map} that journals every mutation. Every method holds the lock of the map. Views returned by
+ * {@link #keySet()}, {@link #values()} and {@link #entrySet()} are read-only copies, so they can be iterated while other
+ * threads modify the map, and mutations through them can't bypass the journal.
+ *
+ * @since 2.2
+ * @author Alex Cai
+ */
+final class JournaledMap<K, V> extends JournaledStore implements Map<K, V>
+{
+	private Map<K, V> map; //讀取完成後才會有值
+
+	JournaledMap(String fileName, Codec codec)
+	{
+		super(fileName, codec);
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	void fill(Object content)
+	{
+		map = CastToInstance.modifiableMap(content);
+	}
+
+	@Override
+	Object content()
+	{
+		return map;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	void apply(byte operation, Object key, Object value)
+	{
+		switch (operation)
+		{
+			case PUT -> map.put((K) key, (V) value);
+			case REMOVE -> map.remove(key);
+			case CLEAR -> map.clear();
+		}
+	}
+
+	@Override
+	public synchronized int size()
+	{
+		awaitLoaded();
+		return map.size();
+	}
+
+	@Override
+	public synchronized boolean isEmpty()
+	{
+		awaitLoaded();
+		return map.isEmpty();
+	}
+
+	@Override
+	public synchronized boolean containsKey(Object key)
+	{
+		awaitLoaded();
+		return map.containsKey(key);
+	}
+
+	@Override
+	public synchronized boolean containsValue(Object value)
+	{
+		awaitLoaded();
+		return map.containsValue(value);
+	}
+
+	@Override
+	public synchronized V get(Object key)
+	{
+		awaitLoaded();
+		return map.get(key);
+	}
+
+	@Override
+	public synchronized V put(K key, V value)
+	{
+		awaitLoaded();
+		journal(PUT, key, value); //先寫日誌 再修改
+		return map.put(key, value);
+	}
+
+	@Override
+	public synchronized V remove(Object key)
+	{
+		awaitLoaded();
+		if (!map.containsKey(key)) //沒有的東西不必記錄
+			return null;
+		journal(REMOVE, key, null);
+		return map.remove(key);
+	}
+
+	@Override
+	public synchronized void putAll(Map<? extends K, ? extends V> m)
+	{
+		awaitLoaded();
+		for (Map.Entry<? extends K, ? extends V> entry : m.entrySet())
+			put(entry.getKey(), entry.getValue());
+	}
+
+	@Override
+	public synchronized void clear()
+	{
+		awaitLoaded();
+		journal(CLEAR, null, null);
+		map.clear();
+	}
+
+	@Override
+	public synchronized Set<K> keySet()
+	{
+		awaitLoaded();
+		return Collections.unmodifiableSet(new LinkedHashSet<>(map.keySet())); //複製一份 迭代時不會和修改衝突
+	}
+
+	@Override
+	public synchronized Collection<V> values()
+	{
+		awaitLoaded();
+		return Collections.unmodifiableCollection(new ArrayList<>(map.values()));
+	}
+
+	@Override
+	public synchronized Set<Map.Entry<K, V>> entrySet()
+	{
+		awaitLoaded();
+		return Collections.unmodifiableMap(new LinkedHashMap<>(map)).entrySet();
+	}
+
+	@Override
+	public synchronized boolean equals(Object o)
+	{
+		awaitLoaded();
+		return o == this || map.equals(o);
+	}
+
+	@Override
+	public synchronized int hashCode()
+	{
+		awaitLoaded();
+		return map.hashCode();
+	}
+
+	@Override
+	public synchronized String toString()
+	{
+		awaitLoaded();
+		return map.toString();
+	}
+}
+
+/**
+ * A {@link Set} that journals every mutation. Every method holds the lock of the set. The iterator is read-only and
+ * iterates over a copy, so removing through it can't bypass the journal.
+ *
+ * @since 2.2
+ * @author Alex Cai
+ */
+final class JournaledSet<E> extends JournaledStore implements Set<E>
+{
+	private Set<E> set; //讀取完成後才會有值
+
+	JournaledSet(String fileName)
+	{
+		super(fileName, null);
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	void fill(Object content)
+	{
+		set = CastToInstance.modifiableSet(content);
+	}
+
+	@Override
+	Object content()
+	{
+		return set;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	void apply(byte operation, Object key, Object value)
+	{
+		switch (operation)
+		{
+			case ADD -> set.add((E) key);
+			case REMOVE -> set.remove(key);
+			case CLEAR -> set.clear();
+		}
+	}
+
+	@Override
+	public synchronized int size()
+	{
+		awaitLoaded();
+		return set.size();
+	}
+
+	@Override
+	public synchronized boolean isEmpty()
+	{
+		awaitLoaded();
+		return set.isEmpty();
+	}
+
+	@Override
+	public synchronized boolean contains(Object o)
+	{
+		awaitLoaded();
+		return set.contains(o);
+	}
+
+	@Override
+	public synchronized Iterator<E> iterator()
+	{
+		awaitLoaded();
+		return Collections.unmodifiableSet(new LinkedHashSet<>(set)).iterator(); //複製一份 迭代時不會和修改衝突
+	}
+
+	@Override
+	public synchronized Object[] toArray()
+	{
+		awaitLoaded();
+		return set.toArray();
+	}
+
+	@Override
+	public synchronized <T> T[] toArray(T[] a)
+	{
+		awaitLoaded();
+		return set.toArray(a);
+	}
+
+	@Override
+	public synchronized boolean add(E e)
+	{
+		awaitLoaded();
+		if (set.contains(e)) //已經有了 不必記錄
+			return false;
+		journal(ADD, e, null);
+		return set.add(e);
+	}
+
+	@Override
+	public synchronized boolean remove(Object o)
+	{
+		awaitLoaded();
+		if (!set.contains(o))
+			return false;
+		journal(REMOVE, o, null);
+		return set.remove(o);
+	}
+
+	@Override
+	public synchronized boolean containsAll(Collection<?> c)
+	{
+		awaitLoaded();
+		return set.containsAll(c);
+	}
+
+	@Override
+	public synchronized boolean addAll(Collection<? extends E> c)
+	{
+		awaitLoaded();
+		boolean changed = false;
+		for (E e : c)
+			changed |= add(e);
+		return changed;
+	}
+
+	@Override
+	public synchronized boolean retainAll(Collection<?> c)
+	{
+		awaitLoaded();
+		boolean changed = false;
+		for (Object o : set.toArray())
+			if (!c.contains(o))
+				changed |= remove(o);
+		return changed;
+	}
+
+	@Override
+	public synchronized boolean removeAll(Collection<?> c)
+	{
+		awaitLoaded();
+		boolean changed = false;
+		for (Object o : c)
+			changed |= remove(o);
+		return changed;
+	}
+
+	@Override
+	public synchronized void clear()
+	{
+		awaitLoaded();
+		journal(CLEAR, null, null);
+		set.clear();
+	}
+
+	@Override
+	public synchronized boolean equals(Object o)
+	{
+		awaitLoaded();
+		return o == this || set.equals(o);
+	}
+
+	@Override
+	public synchronized int hashCode()
+	{
+		awaitLoaded();
+		return set.hashCode();
+	}
+
+	@Override
+	public synchronized String toString()
+	{
+		awaitLoaded();
+		return set.toString();
+	}
+}
+
+/**
+ * A {@link LongByteMap} that journals every mutation. Reads take an optimistic stamp instead of a lock, since they
+ * happen on every reply while writes are rare, and only retry with a read lock if a write happened at the same time.
+ *
+ * @since 2.2
+ * @author Alex Cai
+ */
+final class JournaledLongByteMap extends JournaledStore
+{
+	private final StampedLock lock = new StampedLock(); //只保護map的內容 日誌依然由synchronized保護
+	private LongByteMap map; //讀取完成後才會有值
+
+	JournaledLongByteMap(String fileName, Codec codec)
+	{
+		super(fileName, codec);
+	}
+
+	@Override
+	void fill(Object content)
+	{
+		map = content instanceof LongByteMap longByteMap ? longByteMap : new LongByteMap(0);
+	}
+
+	@Override
+	Object content()
+	{
+		return map;
+	}
+
+	@Override
+	void apply(byte operation, Object key, Object value)
+	{
+		if (operation == PUT && key instanceof Long longKey && value instanceof Byte byteValue)
+			map.put(longKey, byteValue);
+	}
+
+	byte get(long key, byte defaultValue)
+	{
+		awaitLoaded();
+		long stamp = lock.tryOptimisticRead();
+		byte value = map.get(key, defaultValue);
+		if (lock.validate(stamp)) //絕大多數的情況 讀取期間沒有寫入
+			return value;
+		stamp = lock.readLock();
+		try
+		{
+			return map.get(key, defaultValue);
+		}
+		finally
+		{
+			lock.unlockRead(stamp);
+		}
+	}
+
+	synchronized void put(long key, byte value)
+	{
+		awaitLoaded();
+		journal(PUT, key, value); //先寫日誌 再修改
+		long stamp = lock.writeLock();
+		try
+		{
+			map.put(key, value);
+		}
+		finally
+		{
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	int size()
+	{
+		awaitLoaded();
+		long stamp = lock.readLock();
+		try
+		{
+			return map.size();
+		}
+		finally
+		{
+			lock.unlockRead(stamp);
+		}
+	}
+}
@@ -1,17 +1,37 @@
 package cartoland.utilities;
 
+import net.dv8tion.jda.api.interactions.commands.Command;
+import net.dv8tion.jda.api.interactions.commands.build.OptionData;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * {@code JsonHandle} is a utility class that handles all the need of JSON. It will load every JSON files that the bot need
  * at the beginning of process, and provide every information that the outer classes need. This is the only place
  * that imports {@link JSONArray} and {@link JSONObject}. Can not be instantiated or inherited.
+ * <p>
+ * Language files are compiled into flat string tables when they are loaded. Every key gets an ID that never changes
+ * during the process, and each language has a {@code String[]} indexed by the ID, with {@code &} references already
+ * resolved and missing strings already filled with English. So a lookup is a single array index, and mistakes in the
+ * language files are logged once when loading instead of showing up as "null" in replies.
+ * <p>
+ * Everything loaded from the language files is kept in one immutable {@link LanguageSnapshot}, published through a
+ * volatile reference. The {@code lang/} folder is watched, and when a file changes, a new snapshot is built and
+ * validated in the background, then swapped in at once. A lookup never sees a half-loaded language, and a broken file
+ * only gets logged, while the old snapshot stays in use.
  *
  * @since 1.0
  * @author Alex Cai
@@ -23,25 +43,54 @@ public final class JsonHandle
 		throw new AssertionError(IDs.YOU_SHALL_NOT_ACCESS);
 	}
 
-	private static final String USERS_FILE_NAME = "serialize/users.ser";
+	private static final String USERS_FILE_NAME = "serialize/users.bin";
+	private static final String LEGACY_USERS_FILE_NAME = "serialize/users.ser"; //舊的Java串聯化格式 只會在遷移時讀取
 
-	@SuppressWarnings("unchecked")
-	private static final Map<Long, String> users = CastToInstance.modifiableMap(FileHandle.deserialize(USERS_FILE_NAME)); //使用者的語言設定 id為key en, tw 等等的語言字串為value
-	private static final Map<String, JSONObject> languageFileMap = HashMap.newHashMap(7); //語言字串為key 語言檔案為value
-	private static final Map<String, List<String>> commandListMap = HashMap.newHashMap(4); //cmd.list等等為key 語言檔案對應的JSONArray為value
+	//索引就是存在users.bin裡的語言序數 所以不能改變順序 新的語言只能加在最後面
+	private static final String[] LANGUAGES = { Languages.ENGLISH, Languages.TW_MANDARIN, Languages.TAIWANESE, Languages.CANTONESE,
+			Languages.CHINESE, Languages.ESPANOL, Languages.JAPANESE }; //英文一定要在第一個 其他語言以它為備用
+	private static final byte ENGLISH = 0;
+	private static final byte DEFAULT_LANGUAGE = 1; //沒有設定過語言的使用者 使用台灣正體
 
-	private static JSONObject englishFile; //英文檔案
+	private static final JournaledLongByteMap users = FileHandle.journaledLongByteMap(USERS_FILE_NAME, new LanguagePreferenceCodec()); //使用者的語言設定 id為key 語言序數為value
+	private static final String[] COMMAND_LISTS = { "help.list", "cmd.list", "faq.list", "dtp.list" }; //英文檔一定要有這些陣列
+	private static final int MAX_REFERENCE_DEPTH = 8; //&的層數上限 避免互相參照
+	private static final String LANGUAGE_DIRECTORY = "lang";
+	private static final long RELOAD_DELAY_MILLISECONDS = 500L; //編輯器存檔時常常連續觸發好幾次事件 等它停下來再讀
+
+	private static final Map<String, Integer> keyIDs = new ConcurrentHashMap<>(); //key的編號 只增不減 所以預先算好的編號永遠有效
+	private static volatile LanguageSnapshot snapshot; //所有從語言檔讀進來的東西 整個一起換掉
+
+	//在背景重新讀取語言檔 不佔用JDA的事件執行緒
+	private static final ScheduledExecutorService languageLoader = Executors.newSingleThreadScheduledExecutor(runnable ->
+	{
+		Thread thread = new Thread(runnable, "Language Loader");
+		thread.setDaemon(true); //不要因為它而無法結束程式
+		return thread;
+	});
+	private static ScheduledFuture<?> pendingReload; //只在languageLoader的執行緒裡存取
 
 	static
 	{
-		reloadLanguageFiles();
-		FileHandle.registerSerialize(USERS_FILE_NAME, users);
+		try
+		{
+			snapshot = buildSnapshot();
+		}
+		catch (IOException | RuntimeException exception) //一開始就讀不到 機器人也沒辦法運作
+		{
+			throw new ExceptionInInitializerError(exception);
+		}
+		watchLanguageFiles();
 	}
 
 	public static String command(long userID, String commandName)
 	{
+		String reply = stringTable(userID).commandReplies.get(commandName); //只和語言與指令有關 讀取語言檔時就組好了
+		if (reply != null)
+			return reply;
+
 		StringBuilder builder = new StringBuilder(getString(userID, commandName + ".begin")); //開頭 注意每個語言檔的指令裡一定要有.begin 否則會出現"null"
-		JSONArray dotListArray = englishFile.getJSONArray(commandName + ".list"); //中間的資料 注意每個語言檔的指令裡一定要有.list 否則會擲出JSONException
+		JSONArray dotListArray = snapshot.englishFile.getJSONArray(commandName + ".list"); //中間的資料 注意每個語言檔的指令裡一定要有.list 否則會擲出JSONException
 		int dotListLength = dotListArray.length();
 		if (dotListLength != 0) //建立回覆字串
 		{
@@ -61,7 +110,9 @@ public final class JsonHandle
 		String result = getString(userID, commandName + ".name." + argument);
 		if ("lang".equals(commandName)) //如果使用的是/lang指令(或/language)
 		{
-			users.put(userID, argument); //更改語言
+			int language = languageOrdinal(argument);
+			if (language != -1) //選項是固定的 不過還是檢查一下
+				users.put(userID, (byte) language); //更改語言
 			return result; //結束
 		}
 
@@ -69,9 +120,19 @@ public final class JsonHandle
 		return "null".equals(result) ? getString(userID, commandName + ".fail") : result; //注意每個語言檔的指令裡一定要有.fail 否則會出現"null"
 	}
 
-	public static List<String> commandList(String commandName)
+	/**
+	 * Auto complete the argument of /help, /cmd, /faq or /dtp from the completion index of the current snapshot.
+	 *
+	 * @param commandName "help", "cmd", "faq" or "dtp".
+	 * @param prefix What the user has typed.
+	 * @return At most {@link OptionData#MAX_CHOICES} choices, best first.
+	 * @since 2.2
+	 * @author Alex Cai
+	 */
+	public static List<Command.Choice> commandChoices(String commandName, String prefix)
 	{
-		return commandListMap.getOrDefault(commandName + ".list", Collections.emptyList());
+		CompletionIndex index = snapshot.commandIndices.get(commandName);
+		return index != null ? index.complete(prefix, OptionData.MAX_CHOICES) : Collections.emptyList();
 	}
 
 	private static List<String> buildStringListFromJsonArray(JSONArray jsonArray)
@@ -82,20 +143,199 @@ public final class JsonHandle
 				.toList();
 	}
 
+	/**
+	 * Reload the language files in the background. The old snapshot stays in use until the new one is fully built and
+	 * validated, or forever if the new files are broken.
+	 *
+	 * @since 1.0
+	 * @author Alex Cai
+	 */
 	public static void reloadLanguageFiles()
 	{
-		languageFileMap.put(Languages.ENGLISH, englishFile = new JSONObject(FileHandle.buildJsonStringFromFile("lang/en.json")));
-		languageFileMap.put(Languages.TW_MANDARIN, new JSONObject(FileHandle.buildJsonStringFromFile("lang/tw.json")));
-		languageFileMap.put(Languages.TAIWANESE, new JSONObject(FileHandle.buildJsonStringFromFile("lang/ta.json")));
-		languageFileMap.put(Languages.CANTONESE, new JSONObject(FileHandle.buildJsonStringFromFile("lang/hk.json")));
-		languageFileMap.put(Languages.CHINESE, new JSONObject(FileHandle.buildJsonStringFromFile("lang/cn.json")));
-		languageFileMap.put(Languages.ESPANOL, new JSONObject(FileHandle.buildJsonStringFromFile("lang/es.json")));
-		languageFileMap.put(Languages.JAPANESE, new JSONObject(FileHandle.buildJsonStringFromFile("lang/jp.json")));
+		languageLoader.execute(JsonHandle::reloadNow);
+	}
+
+	private static void reloadNow()
+	{
+		try
+		{
+			snapshot = buildSnapshot(); //一次換掉 讀取的執行緒不會看到一半的語言檔
+			FileHandle.log("Reloaded language files");
+		}
+		catch (IOException | RuntimeException exception) //JSONException也是RuntimeException
+		{
+			FileHandle.log("Language files were not reloaded: " + exception.getMessage());
+		}
+	}
+
+	private static void watchLanguageFiles()
+	{
+		WatchService watchService;
+		try
+		{
+			watchService = FileSystems.getDefault().newWatchService();
+			Paths.get(LANGUAGE_DIRECTORY).register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+		}
+		catch (IOException exception)
+		{
+			FileHandle.log(exception);
+			return; //還是可以用/reload
+		}
+
+		Thread watcher = new Thread(() ->
+		{
+			while (true)
+			{
+				WatchKey watchKey;
+				try
+				{
+					watchKey = watchService.take();
+				}
+				catch (InterruptedException | ClosedWatchServiceException exception)
+				{
+					return;
+				}
+				boolean changed = false;
+				for (WatchEvent<?> event : watchKey.pollEvents())
+					if (event.context() instanceof Path file && file.toString().endsWith(".json")) //OVERFLOW事件的context是null
+						changed = true;
+				if (changed)
+					languageLoader.execute(JsonHandle::scheduleReload);
+				if (!watchKey.reset()) //資料夾不見了
+					return;
+			}
+		}, "Language Watcher");
+		watcher.setDaemon(true);
+		watcher.start();
+	}
+
+	private static void scheduleReload()
+	{
+		if (pendingReload != null)
+			pendingReload.cancel(false); //還在等的話 重新計時
+		pendingReload = languageLoader.schedule(JsonHandle::reloadNow, RELOAD_DELAY_MILLISECONDS, TimeUnit.MILLISECONDS);
+	}
+
+	private static synchronized LanguageSnapshot buildSnapshot() throws IOException
+	{
+		JSONObject[] languageFiles = new JSONObject[LANGUAGES.length]; //以語言序數為索引
+		for (int language = 0; language < LANGUAGES.length; language++)
+		{
+			JSONObject file = new JSONObject(Files.readString(Paths.get(LANGUAGE_DIRECTORY, LANGUAGES[language] + ".json"))); //格式錯誤會擲出JSONException
+			if (file.isEmpty())
+				throw new IOException("Language file " + LANGUAGES[language] + " is empty");
+			languageFiles[language] = file;
+		}
+		JSONObject englishFile = languageFiles[ENGLISH];
+
+		Map<String, List<String>> commandLists = HashMap.newHashMap(COMMAND_LISTS.length); //cmd.list等等為key 語言檔案對應的JSONArray為value
+		for (String commandList : COMMAND_LISTS)
+			commandLists.put(commandList, buildStringListFromJsonArray(englishFile.getJSONArray(commandList))); //沒有的話會擲出JSONException
+
+		for (JSONObject file : languageFiles) //每個語言的key都要有編號
+			for (String key : file.keySet())
+				internKey(key);
+
+		StringTable[] stringTables = new StringTable[LANGUAGES.length];
+		for (int language = 0; language < LANGUAGES.length; language++)
+			stringTables[language] = compileTable(LANGUAGES[language], languageFiles[language], englishFile, commandLists);
+		Map<String, CompletionIndex> commandIndices = HashMap.newHashMap(commandLists.size()); //自動完成用
+		for (Map.Entry<String, List<String>> listAndItems : commandLists.entrySet())
+			commandIndices.put(commandNameOf(listAndItems.getKey()), CompletionIndex.ofNames(listAndItems.getValue()));
+		return new LanguageSnapshot(englishFile, stringTables, Map.copyOf(commandIndices));
+	}
+
+	private static StringTable compileTable(String language, JSONObject file, JSONObject englishFile, Map<String, List<String>> commandLists)
+	{
+		String[] table = new String[keyIDs.size()];
+		MessageTemplate[] templates = new MessageTemplate[table.length];
+		for (Map.Entry<String, Integer> keyAndID : keyIDs.entrySet())
+		{
+			String key = keyAndID.getKey();
+			String value = rawString(file, key, englishFile); //這個語言沒有的話 會是英文的
+			if (value == null)
+			{
+				FileHandle.log("Language file " + language + ": " + key + " is missing, and there is no English fallback");
+				continue;
+			}
+			for (int depth = 0; value != null && !value.isEmpty() && value.charAt(0) == '&'; depth++) //以&開頭的json key 代表要去那個地方找 (&在C/C++中代表reference)
+			{
+				if (depth == MAX_REFERENCE_DEPTH)
+				{
+					FileHandle.log("Language file " + language + ": reference loop at " + key);
+					value = null;
+					break;
+				}
+				String target = value.substring(1);
+				if ((value = rawString(file, target, englishFile)) == null)
+					FileHandle.log("Language file " + language + ": " + key + " references missing key " + target);
+			}
+			if (value != null && value.isEmpty())
+				FileHandle.log("Language file " + language + ": " + key + " is an empty string");
+			table[keyAndID.getValue()] = value;
+			if (value != null)
+				templates[keyAndID.getValue()] = MessageTemplate.parse(value); //不支援的格式會是null 到時候交給formatted
+		}
+
+		//help, cmd, faq, dtp的回覆 開頭和結尾是這個語言的 中間的列表是英文的
+		Map<String, String> commandReplies = HashMap.newHashMap(commandLists.size());
+		for (Map.Entry<String, List<String>> listAndItems : commandLists.entrySet())
+		{
+			String commandName = commandNameOf(listAndItems.getKey());
+			String begin = compiledString(table, commandName + ".begin"); //注意每個語言檔的指令裡一定要有.begin 否則會出現"null"
+			String end = compiledString(table, commandName + ".end"); //注意每個語言檔的指令裡一定要有.end 否則會出現"null"
+			commandReplies.put(commandName, begin + String.join(", ", listAndItems.getValue()) + end);
+		}
+		return new StringTable(table, templates, Map.copyOf(commandReplies));
+	}
+
+	private static String commandNameOf(String listKey)
+	{
+		return listKey.substring(0, listKey.length() - ".list".length()); //cmd.list -> cmd
+	}
+
+	private static String compiledString(String[] table, String key)
+	{
+		Integer id = keyIDs.get(key);
+		String value = id != null ? table[id] : null;
+		return value != null ? value : "null";
+	}
+
+	private static String rawString(JSONObject file, String key, JSONObject englishFile)
+	{
+		Object optionalValue = file.opt(key); //之所以使用opt 是為了更快一些 file.getString還要檢查has
+		if (optionalValue == null && file != englishFile) //用指標比較 如果不是英文 才有在englishFile裡找的必要
+			optionalValue = englishFile.opt(key);
+		return optionalValue == null ? null : optionalValue.toString();
+	}
 
-		commandListMap.put("help.list", buildStringListFromJsonArray(englishFile.getJSONArray("help.list")));
-		commandListMap.put("cmd.list",  buildStringListFromJsonArray(englishFile.getJSONArray("cmd.list")));
-		commandListMap.put("faq.list",  buildStringListFromJsonArray(englishFile.getJSONArray("faq.list")));
-		commandListMap.put("dtp.list",  buildStringListFromJsonArray(englishFile.getJSONArray("dtp.list")));
+	private static int internKey(String key) //只在synchronized的方法裡呼叫
+	{
+		Integer id = keyIDs.get(key);
+		if (id != null)
+			return id;
+		int newID = keyIDs.size();
+		keyIDs.put(key, newID);
+		return newID;
+	}
+
+	/**
+	 * Get the ID of a key, for callers on hot paths to look up strings with {@link #getString(long, int)} without
+	 * hashing the key every time. The ID never changes during the process, even after reloading the language files.
+	 * Keys that are not in any language file get an ID too, and are logged.
+	 *
+	 * @param key The key of a string in a json file.
+	 * @return The ID of the key.
+	 * @since 2.2
+	 * @author Alex Cai
+	 */
+	public static synchronized int keyID(String key)
+	{
+		Integer id = keyIDs.get(key);
+		if (id != null)
+			return id;
+		FileHandle.log("Language files do not have key " + key);
+		return internKey(key);
 	}
 
 	/**
@@ -109,43 +349,194 @@ public final class JsonHandle
 	 */
 	public static String getString(long userID, String key)
 	{
-		//程式設計原則 make the common case fast
-		//這個函式還能再最佳化嗎?
+		Integer id = keyIDs.get(key); //不用keyID 因為key可能來自使用者的輸入 不能讓它無限增加
+		return id != null ? getString(userID, id.intValue()) : "null";
+	}
 
-		//獲取使用者設定的語言
-		//找不到設定的語言就放台灣正體進去
-		JSONObject file = languageFileMap.get(users.computeIfAbsent(userID, defaultLanguage -> Languages.TW_MANDARIN));
-		Object optionalValue; //要獲得的字串(物件型態)
-		String result; //要獲得的字串
-
-		//之所以使用opt 是為了更快一些 file.getString還要檢查has
-		//如果使用者的語言檔沒有這個key 就預設使用英文
-		//之所以不用String.valueOf包住全部 而是只包englishFile.opt(key) 是因為只有它才需要valueOf optionalValue只需一個轉字串即可
-		if ((optionalValue = file.opt(key)) != null)
-			result = optionalValue.toString();
-		else if (file != englishFile) //用指標比較 如果預設不是英文 才有在englishFile裡找的必要
-			result = String.valueOf(englishFile.opt(key));
-		else
-			return "null";
-
-		//注意.json檔內一定不能有空字串 否則charAt會擲出StringIndexOutOfBoundsException
-		//為了讓機器人省去檢查 也為了省去動用result.startsWith 辛苦一下我們人類了
-		if (result.charAt(0) == '&') //以&開頭的json key 代表要去那個地方找 (&在C/C++中代表reference)
-			key = result.substring(1); //獲得新的key 進入下一次opt
-		else //並不是以&開頭
-			return result; //result就是最終找到的結果了 直接結束 注意若沒找到 會回傳內容為"null"的字串
-
-		//以下是已經&過 直接取用上面的程式碼
-		if ((optionalValue = file.opt(key)) != null)
-			return optionalValue.toString(); //與上面不同 可以直接回傳了
-		else if (file != englishFile) //用指標比較 如果預設不是英文 才有在englishFile裡找的必要
-			return String.valueOf(englishFile.opt(key));
-		else
-			return "null";
+	/**
+	 * Get string from the compiled string table based on the ID of a user and the ID of a key.
+	 *
+	 * @param userID Determines which string table are going to access.
+	 * @param keyID The ID from {@link #keyID(String)}.
+	 * @return The string that key mapped, or "null" if not presented.
+	 * @since 2.2
+	 * @author Alex Cai
+	 */
+	public static String getString(long userID, int keyID)
+	{
+		String[] strings = stringTable(userID).strings;
+		String result = keyID < strings.length ? strings[keyID] : null; //在重新讀取之後才取得編號的key 不在表裡
+		return result != null ? result : "null";
 	}
 
 	public static String getString(long userID, String key, Object... withs)
 	{
-		return getString(userID, key).formatted(withs);
+		Integer id = keyIDs.get(key);
+		return id != null ? getString(userID, id.intValue(), withs) : "null";
+	}
+
+	public static String getString(long userID, int keyID, Object... withs)
+	{
+		MessageTemplate[] templates = stringTable(userID).templates;
+		MessageTemplate template = keyID < templates.length ? templates[keyID] : null;
+		String result;
+		if (template != null && (result = template.render(withs)) != null) //已經預先解析過 不必每次都經過Formatter
+			return result;
+		return getString(userID, keyID).formatted(withs); //不支援的格式或參數 結果和以前一樣
+	}
+
+	private static StringTable stringTable(long userID)
+	{
+		//獲取使用者設定的語言
+		//沒有設定過就使用台灣正體 但不會把它存進去
+		StringTable[] stringTables = snapshot.stringTables;
+		byte language = users.get(userID, DEFAULT_LANGUAGE);
+		return stringTables[language >= 0 && language < stringTables.length ? language : DEFAULT_LANGUAGE];
+	}
+
+	private static int languageOrdinal(String language)
+	{
+		for (int i = 0; i < LANGUAGES.length; i++)
+			if (LANGUAGES[i].equals(language))
+				return i;
+		return -1;
+	}
+
+	/**
+	 * The compiled strings of one language, the templates parsed from them, and the replies of the commands that
+	 * list things.
+	 *
+	 * @param strings Strings indexed by key IDs.
+	 * @param templates Templates indexed by key IDs, null if the string is missing or can not be parsed.
+	 * @param commandReplies "help", "cmd", "faq" and "dtp" as keys, and the full replies of {@link #command(long, String)} as values.
+	 * @since 2.2
+	 * @author Alex Cai
+	 */
+	private record StringTable(String[] strings, MessageTemplate[] templates, Map<String, String> commandReplies)
+	{
+	}
+
+	/**
+	 * Everything loaded from the language files at one time. Never modified after it was built.
+	 *
+	 * @param englishFile The English file, for the arrays in {@link #command(long, String)}.
+	 * @param stringTables Compiled tables indexed by language ordinals, the indices of {@link #LANGUAGES}.
+	 * @param commandIndices "cmd" and so on as keys, and the completion indices of their lists as values.
+	 * @since 2.2
+	 * @author Alex Cai
+	 */
+	private record LanguageSnapshot(JSONObject englishFile, StringTable[] stringTables, Map<String, CompletionIndex> commandIndices)
+	{
+	}
+
+	/**
+	 * {@code LanguagePreferenceCodec} is the binary format of {@link #users}. The file starts with a header:
+	 * {@code [int magic][int version][int count]}, followed by a flat array of {@code [long user ID][byte language ordinal]}
+	 * pairs. Only users who have used {@code /lang} are stored. If the file doesn't exist, the old {@code users.ser}
+	 * and its journals will be migrated once. A corrupt file is moved aside with a {@code .corrupt} suffix, and the
+	 * preferences fall back to the old file, or to nothing if there is no old file.
+	 *
+	 * @since 2.2
+	 * @author Alex Cai
+	 */
+	private static final class LanguagePreferenceCodec implements JournaledStore.Codec
+	{
+		private static final int MAGIC = 0x434C4E47; //"CLNG"
+		private static final int VERSION = 1;
+		private static final int HEADER_BYTES = Integer.BYTES * 3;
+		private static final int PAIR_BYTES = Long.BYTES + Byte.BYTES;
+
+		@Override
+		public Object decode(String fileName) throws IOException
+		{
+			Path path = Paths.get(fileName);
+			if (!Files.exists(path)) //還沒有二進位檔
+				return migrate(fileName);
+
+			try
+			{
+				return read(path);
+			}
+			catch (IOException | BufferUnderflowException | IllegalArgumentException exception) //檔案損毀了
+			{
+				//保留損毀的檔案 否則下一次快照就會把它覆蓋掉
+				Path corruptPath = Paths.get(fileName + ".corrupt");
+				Files.move(path, corruptPath, StandardCopyOption.REPLACE_EXISTING);
+				FileHandle.log("Can't read ", fileName, " (", exception, "), moved it to ", corruptPath, " and fell back to ", LEGACY_USERS_FILE_NAME);
+				return migrate(fileName); //沒有舊檔案的話就是空的
+			}
+		}
+
+		private static LongByteMap read(Path path) throws IOException
+		{
+			ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+			if (buffer.getInt() != MAGIC)
+				throw new IOException(path + " is not a language preference file");
+			int version = buffer.getInt();
+			if (version != VERSION)
+				throw new IOException(path + " has unknown version " + version);
+			int count = buffer.getInt();
+			if (count < 0 || count > buffer.remaining() / PAIR_BYTES) //不要照著損毀的數量配置陣列
+				throw new IOException(path + " has corrupt count " + count);
+			LongByteMap map = new LongByteMap(count);
+			for (int i = 0; i < count; i++)
+				map.put(buffer.getLong(), buffer.get());
+			return map;
+		}
+
+		@Override
+		public byte[] encode(Object content)
+		{
+			LongByteMap map = (LongByteMap) content;
+			ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + map.size() * PAIR_BYTES);
+			buffer.putInt(MAGIC).putInt(VERSION).putInt(map.size());
+			map.forEach((userID, language) -> buffer.putLong(userID).put(language));
+			return buffer.array();
+		}
+
+		@Override
+		public boolean accepts(Object value)
+		{
+			return value instanceof Byte;
+		}
+
+		@Override
+		public void writeValue(DataOutputStream output, Object value) throws IOException
+		{
+			output.writeByte((Byte) value);
+		}
+
+		@Override
+		public Object readValue(DataInputStream input) throws IOException
+		{
+			return input.readByte();
+		}
+
+		/**
+		 * Read the old {@code users.ser} and replay its journals, then write the binary file immediately, so the
+		 * migration only happens once. Users who have the default language are dropped, since the old map also
+		 * stored every user who was only replied to once. The old files are left untouched as a backup.
+		 */
+		private Object migrate(String fileName) throws IOException
+		{
+			if (!Files.exists(Paths.get(LEGACY_USERS_FILE_NAME))) //全新的機器人
+				return null;
+
+			JournaledMap<Long, String> legacyMap = new JournaledMap<>(LEGACY_USERS_FILE_NAME, null);
+			legacyMap.fill(FileHandle.deserialize(LEGACY_USERS_FILE_NAME));
+			legacyMap.replayJournals(); //舊格式時期留下的日誌
+			@SuppressWarnings("unchecked")
+			Map<Long, String> legacyContent = (Map<Long, String>) legacyMap.content(); //不開啟日誌 所以不能經過map的方法
+			LongByteMap map = new LongByteMap(0);
+			for (Map.Entry<Long, String> userAndLanguage : legacyContent.entrySet())
+			{
+				int language = languageOrdinal(userAndLanguage.getValue());
+				if (language != -1 && language != DEFAULT_LANGUAGE)
+					map.put(userAndLanguage.getKey(), (byte) language);
+			}
+			FileHandle.writeAtomically(fileName, encode(map));
+			FileHandle.log("Migrated ", map.size(), " of ", legacyContent.size(), " language preferences from ", LEGACY_USERS_FILE_NAME, " to ", fileName);
+			return map;
+		}
 	}
 }
\ No newline at end of file
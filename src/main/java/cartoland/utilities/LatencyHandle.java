@@ -0,0 +1,206 @@
+package cartoland.utilities;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * {@code LatencyHandle} keeps a latency histogram of every slash command, message event, auto complete and button in
+ * memory, for {@code /admin stats} to find which handler is eating the 3 seconds that Discord gives an interaction.
+ * Can not be instantiated or inherited.
+ * <p>
+ * A histogram has log-linear buckets in microseconds like HdrHistogram: values below {@value #SUB_BUCKETS} have their
+ * own buckets, and every power of two above that is split into {@value #SUB_BUCKETS} buckets, so a percentile is at
+ * most about 6% off. Recording is lock-free: the buckets are split into stripes by thread, so handlers on different
+ * threads don't fight over the same cache line, and the stripes are only merged when someone asks for the numbers.
+ *
+ * @since 2.2
+ * @author Alex Cai
+ */
+public final class LatencyHandle
+{
+	private LatencyHandle()
+	{
+		throw new AssertionError(IDs.YOU_SHALL_NOT_ACCESS);
+	}
+
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int MAX_EXPONENT = 36; //2^36微秒大約19小時 再長的都算在最後一格
+	private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+	private static final int ERRORS = BUCKETS; //每條stripe最後兩格 分別是錯誤次數和最大值
+	private static final int MAX = BUCKETS + 1;
+	private static final int STRIPE_LENGTH = BUCKETS + 2;
+	private static final int STRIPES = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() - 1)) << 1; //大於等於CPU數量的2的次方
+	private static final int MAX_REPLY_LENGTH = 1900; //Discord訊息上限是2000字
+
+	private static final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+	/**
+	 * Get the histogram of a handler, so that a caller that records often doesn't need to look it up every time.
+	 *
+	 * @param name The name of the handler, such as {@code /jira} or {@code [archive_thread]}.
+	 * @return The histogram of this name, created if it doesn't exist yet.
+	 * @since 2.2
+	 * @author Alex Cai
+	 */
+	public static Histogram histogram(String name)
+	{
+		return histograms.computeIfAbsent(name, Histogram::new);
+	}
+
+	/**
+	 * Record how long a handler took.
+	 *
+	 * @param name The name of the handler.
+	 * @param latencyNanos How long it took, in nanoseconds.
+	 * @param failed If the handler threw an exception.
+	 * @since 2.2
+	 * @author Alex Cai
+	 */
+	public static void record(String name, long latencyNanos, boolean failed)
+	{
+		histogram(name).record(latencyNanos, failed);
+	}
+
+	/**
+	 * Render count, p50, p99, max and errors of every handler as a code block, slowest p99 first.
+	 *
+	 * @return The table, short enough to be sent as one Discord message.
+	 * @since 2.2
+	 * @author Alex Cai
+	 */
+	public static String render()
+	{
+		List<Summary> summaries = new ArrayList<>(histograms.size());
+		for (Histogram histogram : histograms.values())
+		{
+			Summary summary = histogram.summary();
+			if (summary.count != 0L)
+				summaries.add(summary);
+		}
+		if (summaries.isEmpty())
+			return "No handler has been used yet.";
+		summaries.sort(Comparator.comparingLong(Summary::p99).reversed().thenComparing(Summary::name));
+
+		int nameWidth = 7; //"handler"的長度
+		for (Summary summary : summaries)
+			nameWidth = Math.max(nameWidth, summary.name.length());
+		String rowFormat = "%-" + nameWidth + "s %8s %9s %9s %9s %7s\n";
+		StringBuilder builder = new StringBuilder("```\n")
+				.append(String.format(rowFormat, "handler", "count", "p50", "p99", "max", "errors"));
+		int shown = 0;
+		for (Summary summary : summaries)
+		{
+			String row = String.format(rowFormat, summary.name, summary.count, duration(summary.p50), duration(summary.p99), duration(summary.max), summary.errors);
+			if (builder.length() + row.length() > MAX_REPLY_LENGTH) //放不下了
+				break;
+			builder.append(row);
+			shown++;
+		}
+		if (shown < summaries.size())
+			builder.append("... and ").append(summaries.size() - shown).append(" more\n");
+		return builder.append("```").toString();
+	}
+
+	private static String duration(long micros)
+	{
+		if (micros < 1000L)
+			return micros + "us";
+		if (micros < 1000_000L)
+			return String.format("%.1fms", micros / 1000.0);
+		return String.format("%.2fs", micros / 1000_000.0);
+	}
+
+	private static int bucketOf(long micros)
+	{
+		if (micros < SUB_BUCKETS)
+			return (int) Math.max(micros, 0L); //時鐘倒退的話當作0
+		int exponent = Math.min(63 - Long.numberOfLeadingZeros(micros), MAX_EXPONENT);
+		int subBucket = exponent == MAX_EXPONENT && micros >>> MAX_EXPONENT > 1L ? SUB_BUCKETS - 1 : (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+	}
+
+	private static long highestValueOf(int bucket)
+	{
+		if (bucket < SUB_BUCKETS)
+			return bucket;
+		int shift = bucket / SUB_BUCKETS - 1; //exponent - SUB_BUCKET_BITS
+		long subBucket = SUB_BUCKETS + bucket % SUB_BUCKETS;
+		return ((subBucket + 1L) << shift) - 1L; //這一格裡最大的值 和HdrHistogram一樣寧可高估
+	}
+
+	/**
+	 * The latency histogram of one handler.
+	 *
+	 * @since 2.2
+	 * @author Alex Cai
+	 */
+	public static final class Histogram
+	{
+		private final String name;
+		private final AtomicLongArray stripes = new AtomicLongArray(STRIPES * STRIPE_LENGTH); //每條stripe連續存放
+
+		private Histogram(String name)
+		{
+			this.name = name;
+		}
+
+		/**
+		 * Record how long the handler took.
+		 *
+		 * @param latencyNanos How long it took, in nanoseconds.
+		 * @param failed If the handler threw an exception.
+		 * @since 2.2
+		 * @author Alex Cai
+		 */
+		public void record(long latencyNanos, boolean failed)
+		{
+			long micros = latencyNanos / 1000L;
+			long threadID = Thread.currentThread().threadId();
+			int base = (int) ((threadID ^ threadID >>> 16) & (STRIPES - 1)) * STRIPE_LENGTH;
+			stripes.getAndIncrement(base + bucketOf(micros));
+			if (failed)
+				stripes.getAndIncrement(base + ERRORS);
+			long max = stripes.get(base + MAX);
+			while (micros > max && !stripes.weakCompareAndSetVolatile(base + MAX, max, micros)) //只有更慢的時候才需要寫
+				max = stripes.get(base + MAX);
+		}
+
+		private Summary summary()
+		{
+			long[] merged = new long[STRIPE_LENGTH];
+			for (int stripe = 0; stripe < STRIPES; stripe++)
+			{
+				int base = stripe * STRIPE_LENGTH;
+				for (int i = 0; i < MAX; i++)
+					merged[i] += stripes.get(base + i);
+				merged[MAX] = Math.max(merged[MAX], stripes.get(base + MAX));
+			}
+			long count = 0L; //次數就是各格的總和
+			for (int i = 0; i < BUCKETS; i++)
+				count += merged[i];
+			return new Summary(name, count, percentile(merged, count, 0.50, merged[MAX]), percentile(merged, count, 0.99, merged[MAX]), merged[MAX], merged[ERRORS]);
+		}
+
+		private static long percentile(long[] merged, long count, double percentile, long max)
+		{
+			long rank = Math.max(1L, (long) Math.ceil(count * percentile)); //第幾小的值
+			long seen = 0L;
+			for (int i = 0; i < BUCKETS; i++)
+			{
+				seen += merged[i];
+				if (seen >= rank)
+					return Math.min(highestValueOf(i), max); //不會超過真正的最大值
+			}
+			return max;
+		}
+	}
+
+	private record Summary(String name, long count, long p50, long p99, long max, long errors)
+	{
+	}
+}
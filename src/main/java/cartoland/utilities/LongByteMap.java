@@ -0,0 +1,135 @@
+package cartoland.utilities;
+
+/**
+ * {@code LongByteMap} is an open addressing hash map from {@code long} to {@code byte} with linear probing, which
+ * costs about 12 bytes per entry instead of a {@link java.util.HashMap} entry with a boxed {@link Long}. Neither
+ * {@link #get(long, byte)} nor anything else boxes. Not thread safe, see {@link JournaledLongByteMap}.
+ *
+ * @since 2.2
+ * @author Alex Cai
+ */
+final class LongByteMap
+{
+	private static final long EMPTY = 0L; //空的格子 0這個key另外存
+	private static final int MINIMUM_CAPACITY = 16;
+
+	private long[] keys;
+	private byte[] values;
+	private int size; //不包含0這個key
+	private boolean hasZeroKey;
+	private byte zeroValue;
+
+	LongByteMap(int expectedSize)
+	{
+		int capacity = MINIMUM_CAPACITY;
+		while (capacity * 3 / 4 < expectedSize) //負載因子0.75
+			capacity <<= 1;
+		keys = new long[capacity];
+		values = new byte[capacity];
+	}
+
+	/**
+	 * Get the value of a key. Never modifies the map.
+	 *
+	 * @param key The key.
+	 * @param defaultValue Returned if the key is not in the map.
+	 * @return The value of the key, or {@code defaultValue}.
+	 */
+	byte get(long key, byte defaultValue)
+	{
+		if (key == EMPTY)
+			return hasZeroKey ? zeroValue : defaultValue;
+		long[] keys = this.keys; //放進區域變數 就算被擴充也不會讀到兩個不同的陣列
+		byte[] values = this.values;
+		int mask = keys.length - 1;
+		if (values.length != keys.length) //沒有鎖的讀取 剛好遇上擴充 交給呼叫者重試
+			return defaultValue;
+		for (int index = indexOf(key, mask), probes = 0; probes < keys.length; index = (index + 1) & mask, probes++)
+		{
+			long slot = keys[index];
+			if (slot == key)
+				return values[index];
+			if (slot == EMPTY)
+				return defaultValue;
+		}
+		return defaultValue;
+	}
+
+	void put(long key, byte value)
+	{
+		if (key == EMPTY)
+		{
+			hasZeroKey = true;
+			zeroValue = value;
+			return;
+		}
+		int mask = keys.length - 1;
+		int index = indexOf(key, mask);
+		while (keys[index] != EMPTY && keys[index] != key)
+			index = (index + 1) & mask;
+		values[index] = value; //先寫值 再寫key
+		if (keys[index] == key)
+			return;
+		keys[index] = key;
+		if (++size > keys.length * 3 / 4)
+			grow();
+	}
+
+	int size()
+	{
+		return hasZeroKey ? size + 1 : size;
+	}
+
+	/**
+	 * Call the consumer with every entry, in no particular order.
+	 *
+	 * @param consumer The consumer.
+	 */
+	void forEach(EntryConsumer consumer)
+	{
+		if (hasZeroKey)
+			consumer.accept(EMPTY, zeroValue);
+		for (int i = 0; i < keys.length; i++)
+			if (keys[i] != EMPTY)
+				consumer.accept(keys[i], values[i]);
+	}
+
+	private void grow()
+	{
+		long[] oldKeys = keys;
+		byte[] oldValues = values;
+		long[] newKeys = new long[oldKeys.length << 1];
+		byte[] newValues = new byte[newKeys.length];
+		int mask = newKeys.length - 1;
+		for (int i = 0; i < oldKeys.length; i++)
+		{
+			if (oldKeys[i] == EMPTY)
+				continue;
+			int index = indexOf(oldKeys[i], mask);
+			while (newKeys[index] != EMPTY)
+				index = (index + 1) & mask;
+			newKeys[index] = oldKeys[i];
+			newValues[index] = oldValues[i];
+		}
+		values = newValues;
+		keys = newKeys;
+	}
+
+	private static int indexOf(long key, int mask)
+	{
+		long hash = key * 0x9E3779B97F4A7C15L; //Fibonacci hashing 讓雪花ID的低位元也分散
+		return (int) (hash ^ (hash >>> 32)) & mask;
+	}
+
+	/**
+	 * Receives the entries of {@link #forEach(EntryConsumer)} without boxing.
+	 *
+	 * @since 2.2
+	 * @author Alex Cai
+	 */
+	@FunctionalInterface
+	interface EntryConsumer
+	{
+		void accept(long key, byte value);
+	}
+}
@@ -0,0 +1,204 @@
+package cartoland.utilities;
+
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.NumberFormat;
+import java.util.Formattable;
+import java.util.Locale;
+
+/**
+ * {@code MessageTemplate} is a string from the language files that was parsed once into literal segments and argument
+ * slots, so that rendering it does not need {@link java.util.Formatter}. Only the conversions that the language files
+ * use are supported: {@code %s}, {@code %d}, {@code %,d} and {@code %0Nd}. The output is the same as
+ * {@link String#formatted(Object...)} with the default locale. For anything else, {@link #parse(String)} or
+ * {@link #render(Object[])} returns null, and the caller should fall back to {@code formatted}.
+ *
+ * @since 2.2
+ * @author Alex Cai
+ * @see JsonHandle
+ */
+final class MessageTemplate
+{
+	private static final byte STRING = 0; //%s
+	private static final byte DECIMAL = 1; //%d 或 %0Nd
+	private static final byte GROUPED_DECIMAL = 2; //%,d
+
+	//和Formatter一樣 用預設的格式化語系
+	private static final char ZERO;
+	private static final char GROUPING_SEPARATOR; //'\0'代表不分位
+	private static final int GROUPING_SIZE; //-1代表無法和Formatter一致 不支援%,d
+
+	static
+	{
+		Locale locale = Locale.getDefault(Locale.Category.FORMAT);
+		DecimalFormatSymbols symbols = DecimalFormatSymbols.getInstance(locale);
+		ZERO = symbols.getZeroDigit();
+		if (locale.equals(Locale.US))
+		{
+			GROUPING_SEPARATOR = symbols.getGroupingSeparator();
+			GROUPING_SIZE = 3;
+		}
+		else if (NumberFormat.getNumberInstance(locale) instanceof DecimalFormat decimalFormat)
+		{
+			GROUPING_SIZE = decimalFormat.getGroupingSize();
+			GROUPING_SEPARATOR = decimalFormat.isGroupingUsed() && GROUPING_SIZE != 0 ? symbols.getGroupingSeparator() : '\0';
+		}
+		else
+		{
+			GROUPING_SEPARATOR = '\0';
+			GROUPING_SIZE = -1;
+		}
+	}
+
+	private final String[] literals; //literals[i]在slots[i]之前 最後一個在所有參數之後
+	private final byte[] kinds;
+	private final int[] widths; //%0Nd的N 其他是0
+	private final int estimatedLength;
+
+	private MessageTemplate(String[] literals, byte[] kinds, int[] widths)
+	{
+		this.literals = literals;
+		this.kinds = kinds;
+		this.widths = widths;
+		int length = kinds.length * 8; //每個參數大約的長度
+		for (String literal : literals)
+			length += literal.length();
+		estimatedLength = length;
+	}
+
+	/**
+	 * Parse a string from the language files.
+	 *
+	 * @param pattern The format string.
+	 * @return The template, or null if the string uses something that is not supported.
+	 * @since 2.2
+	 * @author Alex Cai
+	 */
+	static MessageTemplate parse(String pattern)
+	{
+		int slots = 0;
+		for (int i = pattern.indexOf('%'); i != -1; i = pattern.indexOf('%', i + 1))
+			slots++;
+		String[] literals = new String[slots + 1];
+		byte[] kinds = new byte[slots];
+		int[] widths = new int[slots];
+
+		int slot = 0;
+		int literalBegin = 0;
+		for (int percent = pattern.indexOf('%'); percent != -1; percent = pattern.indexOf('%', literalBegin))
+		{
+			int i = percent + 1;
+			if (i == pattern.length())
+				return null;
+			byte kind;
+			int width = 0;
+			char c = pattern.charAt(i);
+			if (c == 's')
+				kind = STRING;
+			else if (c == ',' && i + 1 < pattern.length() && pattern.charAt(i + 1) == 'd')
+			{
+				if (GROUPING_SIZE == -1)
+					return null;
+				kind = GROUPED_DECIMAL;
+				i++;
+			}
+			else if (c == 'd' || c == '0')
+			{
+				if (c == '0') //%0Nd
+				{
+					for (i++; i < pattern.length() && Character.isDigit(pattern.charAt(i)); i++)
+						width = width * 10 + pattern.charAt(i) - '0';
+					if (width == 0 || i == pattern.length() || pattern.charAt(i) != 'd')
+						return null;
+				}
+				kind = DECIMAL;
+			}
+			else //%n %% %x之類的 語言檔沒用到
+				return null;
+
+			literals[slot] = pattern.substring(literalBegin, percent);
+			kinds[slot] = kind;
+			widths[slot] = width;
+			slot++;
+			literalBegin = i + 1;
+		}
+		literals[slot] = pattern.substring(literalBegin);
+		return new MessageTemplate(literals, kinds, widths);
+	}
+
+	/**
+	 * Render the template with arguments.
+	 *
+	 * @param arguments The arguments, the same as the ones that would be passed to {@link String#formatted(Object...)}.
+	 * @return The rendered string, or null if the arguments are not supported and the caller should use {@code formatted}.
+	 * @since 2.2
+	 * @author Alex Cai
+	 */
+	String render(Object[] arguments)
+	{
+		if (kinds.length == 0)
+			return literals[0];
+		StringBuilder builder = new StringBuilder(estimatedLength);
+		return appendTo(builder, arguments) ? builder.toString() : null;
+	}
+
+	/**
+	 * Render the template into a builder.
+	 *
+	 * @param builder The builder to append to.
+	 * @param arguments The arguments, the same as the ones that would be passed to {@link String#formatted(Object...)}.
+	 * @return false if the arguments are not supported, in which case the builder may contain partial output.
+	 * @since 2.2
+	 * @author Alex Cai
+	 */
+	boolean appendTo(StringBuilder builder, Object[] arguments)
+	{
+		if (arguments.length < kinds.length) //讓Formatter擲出MissingFormatArgumentException
+			return false;
+		for (int i = 0; i < kinds.length; i++)
+		{
+			builder.append(literals[i]);
+			Object argument = arguments[i];
+			if (kinds[i] == STRING)
+			{
+				if (argument instanceof Formattable) //要呼叫formatTo 交給Formatter
+					return false;
+				builder.append(argument); //null會變成"null" 和Formatter一樣
+				continue;
+			}
+
+			long value;
+			if (argument instanceof Integer || argument instanceof Long || argument instanceof Short || argument instanceof Byte)
+				value = ((Number) argument).longValue();
+			else //BigInteger 或是錯誤的型態 交給Formatter
+				return false;
+			appendDecimal(builder, value, kinds[i] == GROUPED_DECIMAL, widths[i]);
+		}
+		builder.append(literals[kinds.length]);
+		return true;
+	}
+
+	private static void appendDecimal(StringBuilder builder, long value, boolean grouped, int width)
+	{
+		//和Formatter的localizedMagnitude相同的規則
+		String digits = Long.toString(value);
+		int begin = builder.length();
+		int offset = 0;
+		if (value < 0L)
+		{
+			builder.append('-');
+			offset = 1; //負號不是數字
+		}
+		int magnitudeBegin = builder.length();
+		int length = digits.length();
+		char separator = grouped ? GROUPING_SEPARATOR : '\0';
+		for (int j = offset; j < length; j++)
+		{
+			builder.append((char) (digits.charAt(j) - '0' + ZERO));
+			if (separator != '\0' && j != length - 1 && (length - j - 1) % GROUPING_SIZE == 0) //後面剩下的位數是一組的倍數
+				builder.append(separator);
+		}
+		for (int padding = width - (builder.length() - begin); padding > 0; padding--) //補零 負號也算在寬度內
+			builder.insert(magnitudeBegin, ZERO);
+	}
+}
@@ -0,0 +1,153 @@
+package cartoland.utilities;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@code RateLimiter} gives every user a token bucket for one command, so that nobody can spam a command that writes
+ * data and queues REST requests as fast as Discord allows, and eat the rate limit of the bot for everyone. A bucket
+ * holds at most {@code capacity} tokens, every use takes one, and one token comes back every {@code refillMillis}
+ * milliseconds. Both can be changed with {@code -Dcartoland.rateLimit.<command>.capacity} and
+ * {@code -Dcartoland.rateLimit.<command>.refillMillis}.
+ * <p>
+ * The buckets are in an open addressing table of user IDs, and each bucket is a single {@code long}:
+ * {@code [48 bits last refill millis][16 bits thousandths of a token]}, updated with compare and set, so no lock is
+ * ever taken. A slot is never emptied; when a probe finds no room, a slot whose bucket has refilled to full is given
+ * to the new user, since a full bucket is the same as no bucket. If even that fails, the user is let through.
+ *
+ * @since 2.2
+ * @author Alex Cai
+ */
+public final class RateLimiter
+{
+	private static final int SLOTS = 1 << 12; //每個指令4096個使用者 滿了就回收已經補滿的
+	private static final int MAX_PROBES = 32;
+	private static final long EMPTY = 0L;
+	private static final int TOKEN_BITS = 16;
+	private static final long TOKEN_MASK = (1L << TOKEN_BITS) - 1L;
+	private static final long ONE_TOKEN = 1000L; //以千分之一個token為單位
+	private static final long ORIGIN = System.nanoTime();
+
+	private static final Map<String, RateLimiter> limiters = new ConcurrentHashMap<>();
+
+	private final String name;
+	private final long capacity; //千分之一個token
+	private final long refillMillis; //幾毫秒補一個token
+	private final AtomicLongArray keys = new AtomicLongArray(SLOTS);
+	private final AtomicLongArray buckets = new AtomicLongArray(SLOTS); //0代表沒用過 也就是滿的
+	private final LongAdder accepted = new LongAdder();
+	private final LongAdder rejected = new LongAdder();
+
+	/**
+	 * Create the rate limiter of a command.
+	 *
+	 * @param name The name of the command, such as {@code lottery}.
+	 * @param capacity How many times a user can use the command in a burst, at most 65.
+	 * @param refillMillis How many milliseconds it takes to get one use back.
+	 * @since 2.2
+	 * @author Alex Cai
+	 */
+	public RateLimiter(String name, int capacity, long refillMillis)
+	{
+		this.name = name;
+		this.capacity = Math.clamp(Integer.getInteger("cartoland.rateLimit." + name + ".capacity", capacity), 1, (int) (TOKEN_MASK / ONE_TOKEN)) * ONE_TOKEN;
+		this.refillMillis = Math.max(1L, Long.getLong("cartoland.rateLimit." + name + ".refillMillis", refillMillis));
+		limiters.put(name, this);
+	}
+
+	/**
+	 * Take a token from the bucket of a user.
+	 *
+	 * @param userID The ID of the user.
+	 * @return 0 if the user can use the command, otherwise how many milliseconds until the next token.
+	 * @since 2.2
+	 * @author Alex Cai
+	 */
+	public long tryAcquire(long userID)
+	{
+		long now = now();
+		int slot = slotOf(userID, now);
+		if (slot == -1) //表滿了 寧可放行也不要擋住正常的使用者
+		{
+			accepted.increment();
+			return 0L;
+		}
+
+		while (true)
+		{
+			long bucket = buckets.get(slot);
+			long tokens = tokensOf(bucket, now);
+			if (tokens < ONE_TOKEN) //不夠一個token
+			{
+				rejected.increment();
+				return ((ONE_TOKEN - tokens) * refillMillis + ONE_TOKEN - 1L) / ONE_TOKEN; //無條件進位
+			}
+			if (buckets.compareAndSet(slot, bucket, now << TOKEN_BITS | (tokens - ONE_TOKEN)))
+			{
+				accepted.increment();
+				return 0L;
+			}
+			now = now(); //被別的執行緒搶先了 重新計算
+		}
+	}
+
+	/**
+	 * Render how many uses were accepted and rejected by every rate limiter.
+	 *
+	 * @return One line for each command, sorted by name.
+	 * @since 2.2
+	 * @author Alex Cai
+	 */
+	public static String render()
+	{
+		StringBuilder builder = new StringBuilder("```\n");
+		for (RateLimiter limiter : new TreeMap<>(limiters).values())
+			builder.append(String.format("%-14s accepted %8d rejected %8d\n", limiter.name, limiter.accepted.sum(), limiter.rejected.sum()));
+		return builder.append("```").toString();
+	}
+
+	private int slotOf(long userID, long now)
+	{
+		int mask = SLOTS - 1;
+		long hash = userID * 0x9E3779B97F4A7C15L; //和LongByteMap一樣 讓雪花ID的低位元也分散
+		int index = (int) (hash ^ (hash >>> 32)) & mask;
+		int reclaimable = -1;
+		long reclaimableKey = EMPTY;
+		for (int probes = 0; probes < MAX_PROBES; probes++, index = (index + 1) & mask)
+		{
+			long key = keys.get(index);
+			if (key == userID)
+				return index;
+			if (key == EMPTY)
+			{
+				if (keys.compareAndSet(index, EMPTY, userID) || keys.get(index) == userID) //搶到空位 或是同一個使用者剛好搶先
+					return index;
+				continue;
+			}
+			if (reclaimable == -1 && tokensOf(buckets.get(index), now) == capacity) //補滿了 等同沒用過
+			{
+				reclaimable = index;
+				reclaimableKey = key;
+			}
+		}
+		if (reclaimable != -1 && keys.compareAndSet(reclaimable, reclaimableKey, userID))
+			return reclaimable;
+		return -1;
+	}
+
+	private long tokensOf(long bucket, long now)
+	{
+		if (bucket == 0L)
+			return capacity;
+		long elapsed = now - (bucket >>> TOKEN_BITS);
+		return Math.min(capacity, (bucket & TOKEN_MASK) + Math.max(0L, elapsed) * ONE_TOKEN / refillMillis);
+	}
+
+	private static long now()
+	{
+		return (System.nanoTime() - ORIGIN) / 1000_000L + 1L; //加1 避免和沒用過的0混淆
+	}
+}
@@ -12,6 +12,7 @@ public final class RegularExpressions
 	public static final Pattern CARTOLAND_MESSAGE_LINK_REGEX = Pattern.compile("https://discord\\.com/channels/" + IDs.CARTOLAND_SERVER_ID + "/\\d+/\\d+");
 	public static final Pattern JIRA_BROWSE_LINK_REGEX; //https://bugs.mojang.com/browse/MC-87984
 	public static final Pattern JIRA_PROJECT_LINK_REGEX; //https://bugs.mojang.com/projects/MC/issues/MC-87984
+	public static final Pattern BUG_MENTION_REGEX; //句子中的MC-87984 也包含上面兩種連結裡的
 	public static final Pattern BUG_ID_REGEX; //MC-87984
 	public static final Pattern BUG_NUMBER_REGEX; //87984
 	public static final Pattern BET_NUMBER_REGEX = Pattern.compile("\\d{1,18}"); //防止輸入超過Long.MAX_VALUE
@@ -29,6 +30,7 @@ public final class RegularExpressions
 		final String BUG_ID_STRING = "(?i)(MC(PE|D|L|LG)?|REALMS|WEB|BDS)-" + BUG_NUMBER_STRING;
 		JIRA_BROWSE_LINK_REGEX = Pattern.compile("https://bugs\\.mojang\\.com/browse/(" + BUG_ID_STRING + ')');
 		JIRA_PROJECT_LINK_REGEX = Pattern.compile("https://bugs\\.mojang\\.com/projects/MC/issues/(" + BUG_ID_STRING + ')');
+		BUG_MENTION_REGEX = Pattern.compile("\\b(" + BUG_ID_STRING + ")\\b"); //連結裡的/也是單字邊界 不會找到XMC-1或MC-1234567
 		BUG_ID_REGEX = Pattern.compile(BUG_ID_STRING);
 		BUG_NUMBER_REGEX = Pattern.compile(BUG_NUMBER_STRING);
 	}
@@ -5,6 +5,7 @@ import cartoland.commands.AdminCommand;
 import net.dv8tion.jda.api.entities.channel.concrete.ForumChannel;
 import net.dv8tion.jda.api.entities.channel.concrete.TextChannel;
 import net.dv8tion.jda.api.entities.channel.concrete.ThreadChannel;
+import net.dv8tion.jda.api.entities.channel.middleman.MessageChannel;
 
 import java.io.Serial;
 import java.io.Serializable;
@@ -26,10 +27,25 @@ public final class TimerHandle
 		throw new AssertionError(IDs.YOU_SHALL_NOT_ACCESS);
 	}
 
-	public record TimerEvent(byte hour, Runnable function) implements Serializable
+	public record TimerEvent(byte hour, Runnable function)
+	{
+	}
+
+	/**
+	 * A message scheduled by {@code /schedule create}. Only this description is saved, since a {@link Runnable} can't
+	 * be serialized; the {@link TimerEvent} is built again from it when the bot starts.
+	 *
+	 * @param hour The hour to send the message, from 0 to 23.
+	 * @param channelID The ID of the channel to send the message to.
+	 * @param content The message.
+	 * @param once If the event is removed after the message was sent.
+	 * @since 2.2
+	 * @author Alex Cai
+	 */
+	public record ScheduledEvent(byte hour, long channelID, String content, boolean once) implements Serializable
 	{
 		@Serial
-		private static final long serialVersionUID = 2_718281828459045235L;
+		private static final long serialVersionUID = 1_414213562373095048L;
 	}
 
 	public record Birthday(byte month, byte date) implements Serializable
@@ -74,21 +90,17 @@ public final class TimerHandle
 	private static final String BIRTHDAY_MAP = "serialize/birthday_map.ser";
 	private static final String SCHEDULED_EVENTS = "serialize/scheduled_events.ser";
 
-	@SuppressWarnings("unchecked") //閉嘴IntelliJ IDEA
-	private static final Map<Long, Birthday> idToBirthday = CastToInstance.modifiableMap(FileHandle.deserialize(BIRTHDAY_MAP));
+	private static final Map<Long, Birthday> idToBirthday = FileHandle.journaledMap(BIRTHDAY_MAP);
 	private static final Map<Birthday, Set<Long>> birthdayToIDs = HashMap.newHashMap(DAYS);
 
 	@SuppressWarnings({"unchecked"}) //閉嘴IntelliJ IDEA
 	private static final Set<Runnable>[] hourRunFunctions = new LinkedHashSet[HOURS]; //用LinkedHashSet確保訊息根據schedule的順序發送
-	@SuppressWarnings("unchecked") //閉嘴IntelliJ IDEA
-	private static final Map<String, TimerEvent> scheduledEvents = CastToInstance.modifiableMap(FileHandle.deserialize(SCHEDULED_EVENTS)); //timer event是匿名的 scheduled event是有名字的
+	private static final Map<String, ScheduledEvent> scheduledEvents = FileHandle.journaledMap(SCHEDULED_EVENTS); //timer event是匿名的 scheduled event是有名字的
+	private static final Map<String, TimerEvent> scheduledTimerEvents = new ConcurrentHashMap<>(); //由scheduledEvents重建 不會被儲存
 	private static final Set<TimerEvent> toBeRemoved = new HashSet<>(); //不能直接在Runnable裡呼叫unregister
 
 	static
 	{
-		FileHandle.registerSerialize(BIRTHDAY_MAP, idToBirthday);
-		FileHandle.registerSerialize(SCHEDULED_EVENTS, scheduledEvents);
-
 		for (int i = 0 ; i < DAYS; i++)
 			birthdayToIDs.put(Birthday.cache[i], new HashSet<>()); //準備366天份的HashSet
 
@@ -100,9 +112,12 @@ public final class TimerHandle
 		for (short i = 0; i < HOURS; i++)
 			hourRunFunctions[i] = new LinkedHashSet<>();
 
+		//重建上次關機前schedule的事件
+		for (Map.Entry<String, ScheduledEvent> nameAndEvent : scheduledEvents.entrySet())
+			registerTimerEvent(scheduledTimerEvent(nameAndEvent.getKey(), nameAndEvent.getValue()));
+
 		//半夜12點
 		final byte zero = 0;
-		TimerHandle.registerTimerEvent(new TimerEvent(zero, FileHandle::flushLog)); //更換log的日期
 		TimerHandle.registerTimerEvent(new TimerEvent(zero, () -> //和生日有關的
 		{
 			LocalDate today = LocalDate.now(utc8);
@@ -241,10 +256,29 @@ public final class TimerHandle
 		hourRunFunctions[timerEvent.hour].add(timerEvent.function);
 	}
 
-	public static void registerScheduledEvent(String name, TimerEvent timerEvent)
+	public static void registerScheduledEvent(String name, ScheduledEvent scheduledEvent)
 	{
-		registerTimerEvent(timerEvent);
-		scheduledEvents.put(name, timerEvent);
+		scheduledEvents.put(name, scheduledEvent);
+		registerTimerEvent(scheduledTimerEvent(name, scheduledEvent));
+	}
+
+	private static TimerEvent scheduledTimerEvent(String name, ScheduledEvent scheduledEvent)
+	{
+		long channelID = scheduledEvent.channelID; //頻道ID
+		String content = scheduledEvent.content; //內容
+		Runnable sendMessageToChannel = () -> //事件內容的Runnable
+		{
+			MessageChannel channel = Cartoland.getJDA().getChannelById(MessageChannel.class, channelID); //尋找頻道
+			if (channel != null) //如果找到頻道
+				channel.sendMessage(content).queue(); //發送訊息
+		};
+		TimerEvent timerEvent = new TimerEvent(scheduledEvent.hour, scheduledEvent.once ? () -> //如果是一次性
+		{
+			sendMessageToChannel.run(); //執行Runnable
+			unregisterScheduledEvent(name); //執行完後刪除事件
+		} : sendMessageToChannel); //不是一次性 就直接把Runnable傳入
+		scheduledTimerEvents.put(name, timerEvent);
+		return timerEvent;
 	}
 
 	public static boolean hasScheduledEvent(String name)
@@ -264,7 +298,10 @@ public final class TimerHandle
 
 	public static void unregisterScheduledEvent(String name)
 	{
-		unregisterTimerEvent(scheduledEvents.remove(name));
+		scheduledEvents.remove(name);
+		TimerEvent timerEvent = scheduledTimerEvents.remove(name);
+		if (timerEvent != null)
+			unregisterTimerEvent(timerEvent);
 	}
 
 	/**
@@ -281,20 +318,13 @@ public final class TimerHandle
 		executorService.shutdown();
 	}
 
-	public static String getTimeString()
-	{
-		int[] now = getTime();
-		return String.format("%02d:%02d:%02d", now[0], now[1], now[2]);
-	}
-
-	public static int[] getTime()
+	public static String getCompactTimeString()
 	{
-		LocalTime now = LocalTime.now(utc8); //現在
-		return new int[] {now.getHour(), now.getMinute(), now.getSecond()};
+		return CachedClock.now().compactTimeString(); //HHmmss
 	}
 
 	public static String getDateString()
 	{
-		return LocalDate.now(utc8).toString();
+		return CachedClock.now().dateString(); //yyyy-MM-dd
 	}
 }
\ No newline at end of file
@@ -0,0 +1,246 @@
+package cartoland.utilities;
+
+import cartoland.buttons.IButton;
+import cartoland.events.ReceiveModal;
+import net.dv8tion.jda.api.interactions.commands.build.CommandData;
+import net.dv8tion.jda.api.interactions.commands.build.SlashCommandData;
+import net.dv8tion.jda.api.interactions.commands.build.SubcommandData;
+import net.dv8tion.jda.api.interactions.commands.build.SubcommandGroupData;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * {@code UsageLogHandle} is a utility class that records every slash command, context menu, button and modal into a
+ * binary event log, for {@link UsageLogQuery} to answer questions such as latency percentiles or top users. Can not be
+ * instantiated or inherited.
+ * <p>
+ * The log is a series of segment files in the {@code usage/} folder, each of which is memory mapped with a fixed size.
+ * A segment starts with a header: {@code [int magic][int version][int header bytes][int capacity][int claimed]}, then two
+ * dictionaries (command names and subcommand names), each as {@code [int count]} and {@code [short length][UTF-8 bytes]}
+ * for every name. Since the dictionaries are stored in every segment, ordinals only need to be stable within a
+ * segment. After the header are fixed {@value #RECORD_BYTES}-byte records:
+ * {@code [long epoch millis][long user ID][long latency nanos][short command][short subcommand][byte kind][byte outcome][short reserved]}.
+ * {@code claimed} is how many slots have been handed out, and may go past the capacity once the segment is full. A
+ * claimed slot whose timestamp is still 0 hasn't been written yet, or its writer died.
+ * <p>
+ * Recording takes no lock: a thread claims a slot of the current segment by atomically incrementing {@code claimed} in
+ * the mapped header, and writes its record into the mapped buffer at that slot. Only the thread that finds the segment
+ * full takes the lock to open the next one.
+ *
+ * @since 2.2
+ * @author Alex Cai
+ */
+public final class UsageLogHandle
+{
+	private UsageLogHandle()
+	{
+		throw new AssertionError(IDs.YOU_SHALL_NOT_ACCESS);
+	}
+
+	public static final byte SLASH_COMMAND = 0;
+	public static final byte CONTEXT_MENU = 1;
+	public static final byte BUTTON = 2;
+	public static final byte MODAL = 3;
+
+	public static final byte OK = 0;
+	public static final byte FAILED = 1; //擲出例外
+
+	static final String USAGE_DIRECTORY = "usage";
+	static final String SEGMENT_SUFFIX = ".seg";
+	static final int MAGIC = 0x43555345; //"CUSE"
+	static final int VERSION = 2; //版本1沒有claimed 紀錄的時間是0就代表區段的結尾
+	private static final int CLAIMED_OFFSET = Integer.BYTES * 4; //標頭的第5個int
+	static final int RECORD_BYTES = 32;
+	static final short NO_NAME = -1; //不在字典裡 或是沒有子指令
+	private static final int SEGMENT_CAPACITY = 1 << 15; //每個區段32768筆紀錄 大約1MB
+
+	private static final String[] commandNames; //字典 索引就是序數
+	private static final String[] subcommandNames;
+	private static final Map<String, Short> commandOrdinals = new HashMap<>();
+	private static final Map<String, Short> subcommandOrdinals = new HashMap<>();
+	private static final byte[] header;
+	//映射的緩衝區是直接緩衝區 對齊的位置可以做原子操作
+	private static final VarHandle INT_VIEW = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+	private static final VarHandle LONG_VIEW = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+	private static volatile Segment segment; //目前的區段 null代表還沒開啟
+
+	static
+	{
+		//從指令的定義建立字典 按鈕和modal沒有定義 所以直接加上
+		List<String> commands = new ArrayList<>();
+		Set<String> subcommands = new LinkedHashSet<>();
+		for (CommandData command : AddCommands.commands())
+		{
+			commands.add(command.getName());
+			if (!(command instanceof SlashCommandData slash))
+				continue;
+			for (SubcommandData subcommand : slash.getSubcommands())
+				subcommands.add(subcommand.getName());
+			for (SubcommandGroupData group : slash.getSubcommandGroups())
+				for (SubcommandData subcommand : group.getSubcommands())
+					subcommands.add(subcommand.getName());
+		}
+		Collections.addAll(commands, IButton.ARCHIVE_THREAD, IButton.DELETE_THREAD, IButton.RENAME_THREAD, ReceiveModal.NEW_TITLE_MODAL_ID);
+
+		commandNames = commands.toArray(new String[0]);
+		subcommandNames = subcommands.toArray(new String[0]);
+		for (short i = 0; i < commandNames.length; i++)
+			commandOrdinals.putIfAbsent(commandNames[i], i);
+		for (short i = 0; i < subcommandNames.length; i++)
+			subcommandOrdinals.put(subcommandNames[i], i);
+		header = buildHeader();
+	}
+
+	/**
+	 * Record an interaction. Called by the listeners after the interaction was processed.
+	 *
+	 * @param kind {@link #SLASH_COMMAND}, {@link #CONTEXT_MENU}, {@link #BUTTON} or {@link #MODAL}.
+	 * @param userID The ID of the user.
+	 * @param name The name of the command, context menu, button or modal.
+	 * @param subcommandName The name of the subcommand, or null.
+	 * @param latencyNanos How long the listener took to process it.
+	 * @param outcome {@link #OK} or {@link #FAILED}.
+	 * @since 2.2
+	 * @author Alex Cai
+	 */
+	public static void record(byte kind, long userID, String name, String subcommandName, long latencyNanos, byte outcome)
+	{
+		Segment current = segment;
+		int slot;
+		while (current == null || (slot = (int) INT_VIEW.getAndAdd(current.buffer, CLAIMED_OFFSET, 1)) >= SEGMENT_CAPACITY) //還沒有區段 或是區段滿了
+		{
+			current = rollOver(current);
+			if (current == null) //無法開啟新的區段
+				return;
+		}
+
+		//每個執行緒寫入自己搶到的位置 使用絕對位置的put 不會動到buffer的狀態
+		int position = header.length + slot * RECORD_BYTES;
+		current.buffer.putLong(position + Long.BYTES, userID)
+				.putLong(position + Long.BYTES * 2, latencyNanos)
+				.putShort(position + Long.BYTES * 3, commandOrdinals.getOrDefault(name, NO_NAME))
+				.putShort(position + Long.BYTES * 3 + Short.BYTES, subcommandName == null ? NO_NAME : subcommandOrdinals.getOrDefault(subcommandName, NO_NAME))
+				.put(position + Long.BYTES * 3 + Short.BYTES * 2, kind)
+				.put(position + Long.BYTES * 3 + Short.BYTES * 2 + 1, outcome);
+		LONG_VIEW.setRelease(current.buffer, position, System.currentTimeMillis()); //時間最後寫 不是0就代表紀錄完整
+	}
+
+	/**
+	 * Force the current segment to the disk and close it. Called when the bot shuts down.
+	 *
+	 * @since 2.2
+	 * @author Alex Cai
+	 */
+	public static synchronized void close()
+	{
+		closeSegment();
+	}
+
+	/**
+	 * Replace a full segment with a new one. Only one thread opens the new segment, the others that found the same
+	 * segment full just use it.
+	 *
+	 * @param full The segment that was full, or null if there was no segment.
+	 * @return The current segment, or null if a new one can't be opened.
+	 */
+	private static synchronized Segment rollOver(Segment full)
+	{
+		Segment current = segment;
+		if (current != full) //別的執行緒已經換過了
+			return current;
+		closeSegment();
+		try
+		{
+			Files.createDirectories(Paths.get(USAGE_DIRECTORY));
+			FileChannel channel = FileChannel.open(Paths.get(USAGE_DIRECTORY, System.currentTimeMillis() + SEGMENT_SUFFIX),
+					StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0L, header.length + (long) SEGMENT_CAPACITY * RECORD_BYTES); //檔案會被延伸到這個大小
+			buffer.put(0, header);
+			segment = new Segment(channel, buffer); //寫完標頭才公開
+			return segment;
+		}
+		catch (IOException exception)
+		{
+			FileHandle.log(exception);
+			return null;
+		}
+	}
+
+	private static void closeSegment()
+	{
+		Segment current = segment;
+		if (current == null)
+			return;
+		segment = null;
+		//還在寫入舊區段的執行緒 寫的依然是同一個映射 關閉通道不會讓映射失效
+		current.buffer.force();
+		try
+		{
+			current.channel.close();
+		}
+		catch (IOException exception)
+		{
+			FileHandle.log(exception);
+		}
+	}
+
+	/**
+	 * A mapped segment. How many of its slots were claimed is kept in its header.
+	 */
+	private static final class Segment
+	{
+		private final FileChannel channel;
+		private final MappedByteBuffer buffer;
+
+		private Segment(FileChannel channel, MappedByteBuffer buffer)
+		{
+			this.channel = channel;
+			this.buffer = buffer;
+		}
+	}
+
+	private static byte[] buildHeader()
+	{
+		byte[][] commandBytes = encode(commandNames);
+		byte[][] subcommandBytes = encode(subcommandNames);
+		int length = Integer.BYTES * 5 + Integer.BYTES + Integer.BYTES;
+		for (byte[] name : commandBytes)
+			length += Short.BYTES + name.length;
+		for (byte[] name : subcommandBytes)
+			length += Short.BYTES + name.length;
+		length = (length + RECORD_BYTES - 1) / RECORD_BYTES * RECORD_BYTES; //對齊紀錄的大小
+
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		buffer.putInt(MAGIC).putInt(VERSION).putInt(length).putInt(SEGMENT_CAPACITY).putInt(0); //還沒有紀錄
+		putNames(buffer, commandBytes);
+		putNames(buffer, subcommandBytes);
+		return buffer.array();
+	}
+
+	private static byte[][] encode(String[] names)
+	{
+		byte[][] utf8 = new byte[names.length][];
+		for (int i = 0; i < names.length; i++)
+			utf8[i] = names[i].getBytes(StandardCharsets.UTF_8);
+		return utf8;
+	}
+
+	private static void putNames(ByteBuffer buffer, byte[][] names)
+	{
+		buffer.putInt(names.length);
+		for (byte[] name : names)
+			buffer.putShort((short) name.length).put(name);
+	}
+}
@@ -0,0 +1,224 @@
+package cartoland.utilities;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code UsageLogQuery} is an offline tool that reads the segments written by {@link UsageLogHandle}, and prints the
+ * count, failures, latency percentiles and top users of every command. Segments are scanned one record at a time, and
+ * only the aggregation (a latency histogram and a user counter per command) is kept in memory. Run it with:
+ * <pre>
+ * java -cp Cartoland.jar cartoland.utilities.UsageLogQuery [folder] [--days N] [--top N]
+ * </pre>
+ * The folder is {@code usage} by default. {@code --days} only counts the last N days, and {@code --top} sets how many
+ * users are listed per command (5 by default).
+ *
+ * @since 2.2
+ * @author Alex Cai
+ */
+public final class UsageLogQuery
+{
+	private UsageLogQuery()
+	{
+		throw new AssertionError(IDs.YOU_SHALL_NOT_ACCESS);
+	}
+
+	private static final String[] KIND_PREFIXES = { "/", "menu: ", "button: ", "modal: " };
+	private static final int VERSION_WITHOUT_CLAIMED = 1; //只能讀到第一個時間是0的紀錄
+
+	public static void main(String[] args) throws IOException
+	{
+		String directory = UsageLogHandle.USAGE_DIRECTORY;
+		long since = 0L;
+		int top = 5;
+		for (int i = 0; i < args.length; i++)
+		{
+			switch (args[i])
+			{
+				case "--days" -> since = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(Long.parseLong(args[++i]));
+				case "--top" -> top = Integer.parseInt(args[++i]);
+				default -> directory = args[i];
+			}
+		}
+
+		Map<String, CommandStatistics> statistics = new TreeMap<>();
+		List<Path> segments = new ArrayList<>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(Paths.get(directory), "*" + UsageLogHandle.SEGMENT_SUFFIX))
+		{
+			for (Path file : files)
+				segments.add(file);
+		}
+		Collections.sort(segments); //檔名是建立的時間
+		long total = 0L;
+		for (Path segment : segments)
+			total += scan(segment, since, statistics);
+
+		System.out.println(total + " records in " + segments.size() + " segments");
+		System.out.printf("%-32s %8s %7s %10s %10s %10s %10s%n", "command", "count", "failed", "p50 ms", "p90 ms", "p99 ms", "max ms");
+		for (Map.Entry<String, CommandStatistics> nameAndStatistics : statistics.entrySet())
+		{
+			CommandStatistics command = nameAndStatistics.getValue();
+			System.out.printf("%-32s %8d %7d %10.3f %10.3f %10.3f %10.3f%n", nameAndStatistics.getKey(), command.count, command.failed,
+							  milliseconds(command.percentile(0.50)), milliseconds(command.percentile(0.90)),
+							  milliseconds(command.percentile(0.99)), milliseconds(command.max));
+			StringBuilder topUsers = new StringBuilder("    top users:");
+			for (Map.Entry<Long, Integer> userAndCount : command.topUsers(top))
+				topUsers.append(' ').append(Long.toUnsignedString(userAndCount.getKey())).append('(').append(userAndCount.getValue()).append(')');
+			System.out.println(topUsers);
+		}
+	}
+
+	private static long scan(Path file, long since, Map<String, CommandStatistics> statistics) throws IOException
+	{
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+		{
+			MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, 0L, channel.size());
+			int magic = segment.getInt();
+			int version = segment.getInt();
+			if (magic != UsageLogHandle.MAGIC || version < VERSION_WITHOUT_CLAIMED || version > UsageLogHandle.VERSION)
+			{
+				System.err.println("Skipped " + file + ", not a usage segment");
+				return 0L;
+			}
+			int headerBytes = segment.getInt();
+			segment.getInt(); //容量 由檔案大小決定即可
+			int claimed = version == VERSION_WITHOUT_CLAIMED ? -1 : segment.getInt();
+			String[] commandNames = readNames(segment);
+			String[] subcommandNames = readNames(segment);
+
+			int slots = (segment.capacity() - headerBytes) / UsageLogHandle.RECORD_BYTES;
+			if (claimed >= 0) //超過容量代表區段滿了
+				slots = Math.min(slots, claimed);
+			long count = 0L;
+			int unfinished = 0;
+			for (int slot = 0; slot < slots; slot++)
+			{
+				int position = headerBytes + slot * UsageLogHandle.RECORD_BYTES;
+				long time = segment.getLong(position);
+				if (time == 0L)
+				{
+					if (claimed < 0) //舊的區段 只能當作結尾
+						break;
+					unfinished++; //還在寫入 或是寫入的執行緒當機了 後面的紀錄依然有效
+					continue;
+				}
+				if (time < since)
+					continue;
+				long userID = segment.getLong(position + Long.BYTES);
+				long latency = segment.getLong(position + Long.BYTES * 2);
+				short command = segment.getShort(position + Long.BYTES * 3);
+				short subcommand = segment.getShort(position + Long.BYTES * 3 + Short.BYTES);
+				byte kind = segment.get(position + Long.BYTES * 3 + Short.BYTES * 2);
+				byte outcome = segment.get(position + Long.BYTES * 3 + Short.BYTES * 2 + 1);
+
+				String name = (kind >= 0 && kind < KIND_PREFIXES.length ? KIND_PREFIXES[kind] : "?") +
+						(command >= 0 && command < commandNames.length ? commandNames[command] : "(unknown)") +
+						(subcommand >= 0 && subcommand < subcommandNames.length ? ' ' + subcommandNames[subcommand] : "");
+				statistics.computeIfAbsent(name, key -> new CommandStatistics()).add(userID, latency, outcome);
+				count++;
+			}
+			if (unfinished > 0)
+				System.err.println("Skipped " + unfinished + " unfinished records in " + file);
+			return count;
+		}
+	}
+
+	private static String[] readNames(MappedByteBuffer segment)
+	{
+		String[] names = new String[segment.getInt()];
+		for (int i = 0; i < names.length; i++)
+		{
+			byte[] utf8 = new byte[segment.getShort()];
+			segment.get(utf8);
+			names[i] = new String(utf8, StandardCharsets.UTF_8);
+		}
+		return names;
+	}
+
+	private static double milliseconds(long nanos)
+	{
+		return nanos / 1_000_000.0;
+	}
+
+	/**
+	 * Streaming aggregation of one command. Latencies go into a log-linear histogram: 16 sub-buckets for every power
+	 * of 2, so a percentile is accurate to about 6%.
+	 *
+	 * @since 2.2
+	 * @author Alex Cai
+	 */
+	private static final class CommandStatistics
+	{
+		private static final int SUB_BUCKET_BITS = 4;
+		private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+		private final long[] histogram = new long[Long.SIZE * SUB_BUCKETS];
+		private final Map<Long, Integer> users = new HashMap<>();
+		private long count;
+		private long failed;
+		private long max;
+
+		private void add(long userID, long latency, byte outcome)
+		{
+			count++;
+			if (outcome != UsageLogHandle.OK)
+				failed++;
+			latency = Math.max(latency, 0L);
+			max = Math.max(max, latency);
+			histogram[bucketOf(latency)]++;
+			users.merge(userID, 1, Integer::sum);
+		}
+
+		private static int bucketOf(long value)
+		{
+			int exponent = 63 - Long.numberOfLeadingZeros(value | 1L);
+			if (exponent < SUB_BUCKET_BITS) //小數值 一個值一個桶
+				return (int) value;
+			return exponent * SUB_BUCKETS + (int) ((value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+		}
+
+		private static long lowerBoundOf(int bucket)
+		{
+			int exponent = bucket / SUB_BUCKETS;
+			if (exponent < SUB_BUCKET_BITS)
+				return bucket;
+			return (long) (SUB_BUCKETS | bucket % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+		}
+
+		private long percentile(double quantile)
+		{
+			long rank = (long) Math.ceil(quantile * count);
+			long seen = 0L;
+			for (int bucket = 0; bucket < histogram.length; bucket++)
+			{
+				seen += histogram[bucket];
+				if (seen >= rank && seen > 0L)
+					return Math.min(lowerBoundOf(bucket), max);
+			}
+			return max;
+		}
+
+		private List<Map.Entry<Long, Integer>> topUsers(int top)
+		{
+			PriorityQueue<Map.Entry<Long, Integer>> heap = new PriorityQueue<>(Map.Entry.comparingByValue()); //最小堆積 只保留前N名
+			for (Map.Entry<Long, Integer> userAndCount : users.entrySet())
+			{
+				heap.add(userAndCount);
+				if (heap.size() > top)
+					heap.poll();
+			}
+			List<Map.Entry<Long, Integer>> result = new ArrayList<>(heap);
+			result.sort(Map.Entry.<Long, Integer>comparingByValue().reversed());
+			return result;
+		}
+	}
+}
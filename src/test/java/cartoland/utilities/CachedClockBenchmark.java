@@ -0,0 +1,52 @@
+package cartoland.utilities;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link CachedClock} with the code that {@link TimerHandle} used before it, which read the system clock and
+ * formatted the strings on every call. Run with {@code -prof gc} to see the allocation per read.
+ *
+ * @since 2.2
+ * @author Alex Cai
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CachedClockBenchmark
+{
+	private static final ZoneOffset utc8 = ZoneOffset.ofHours(8);
+
+	@Benchmark
+	public String cachedDateString()
+	{
+		return CachedClock.now().dateString();
+	}
+
+	@Benchmark
+	public String cachedCompactTimeString()
+	{
+		return CachedClock.now().compactTimeString();
+	}
+
+	@Benchmark
+	public String formattedDateString()
+	{
+		return LocalDate.now(utc8).toString(); //舊的TimerHandle.getDateString
+	}
+
+	@Benchmark
+	public String formattedCompactTimeString()
+	{
+		LocalTime now = LocalTime.now(utc8); //舊的TimerHandle.getTime
+		int[] time = new int[] {now.getHour(), now.getMinute(), now.getSecond()};
+		return String.format("%02d%02d%02d", time[0], time[1], time[2]);
+	}
+}
@@ -0,0 +1,62 @@
+package cartoland.utilities;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of {@link CachedClock}. The strings must be the same as the ones formatted by {@code java.time} in UTC+8, and
+ * the readers of the same second must share one {@link CachedClock.Tick}.
+ *
+ * @since 2.2
+ * @author Alex Cai
+ */
+class CachedClockTest
+{
+	private static final ZoneOffset UTC_8 = ZoneOffset.ofHours(8);
+
+	@Test
+	void rendersTheCurrentSecondInUtc8()
+	{
+		long before = System.currentTimeMillis() / 1000L;
+		CachedClock.Tick tick = CachedClock.now();
+		long after = System.currentTimeMillis() / 1000L;
+		assertTrue(before <= tick.epochSecond() && tick.epochSecond() <= after, "tick of " + tick.epochSecond());
+
+		LocalDateTime expected = LocalDateTime.ofEpochSecond(tick.epochSecond(), 0, UTC_8);
+		assertEquals(expected.format(DateTimeFormatter.ofPattern("HHmmss")), tick.compactTimeString());
+		assertEquals(expected.format(DateTimeFormatter.ISO_LOCAL_DATE), tick.dateString());
+	}
+
+	@Test
+	void sharesTheTickWithinASecond()
+	{
+		//兩次讀取可能剛好跨過一秒 重試到落在同一秒為止
+		for (int i = 0; i < 100; i++)
+		{
+			CachedClock.Tick first = CachedClock.now();
+			CachedClock.Tick second = CachedClock.now();
+			if (first.epochSecond() == second.epochSecond())
+			{
+				assertSame(first, second);
+				return;
+			}
+		}
+		fail("two reads never fell in the same second");
+	}
+
+	@Test
+	void movesOnToTheNextSecond() throws InterruptedException
+	{
+		CachedClock.Tick first = CachedClock.now();
+		Thread.sleep(1100L);
+		CachedClock.Tick second = CachedClock.now();
+		assertTrue(second.epochSecond() > first.epochSecond());
+		assertEquals(LocalDateTime.ofEpochSecond(second.epochSecond(), 0, UTC_8).format(DateTimeFormatter.ofPattern("HHmmss")),
+				second.compactTimeString());
+	}
+}
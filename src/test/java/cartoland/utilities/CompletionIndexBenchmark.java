@@ -0,0 +1,83 @@
+package cartoland.utilities;
+
+import net.dv8tion.jda.api.interactions.commands.Command;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures one keystroke of auto complete over random names. Every query is a prefix of a name with one typo in it, so
+ * most queries go through the fuzzy tier. The plain substring scan that {@code /youtuber} and {@code /schedule} used
+ * before is measured for comparison, although it doesn't find names with typos at all.
+ *
+ * @since 2.2
+ * @author Alex Cai
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CompletionIndexBenchmark
+{
+	private static final int LIMIT = 25;
+	private static final int QUERIES = 1024;
+
+	@Param({ "500", "5000" })
+	public int names;
+
+	private CompletionIndex index;
+	private List<Command.Choice> choices;
+	private String[] queries;
+	private int next;
+
+	@Setup
+	public void setup()
+	{
+		Random random = new Random(20231017L); //每次都是同樣的名字和查詢
+		Set<String> nameSet = new HashSet<>();
+		while (nameSet.size() < names)
+			nameSet.add(randomWord(random, 5 + random.nextInt(16)));
+		List<String> nameList = new ArrayList<>(nameSet);
+		index = CompletionIndex.ofNames(nameList);
+		choices = nameList.stream().sorted().map(name -> new Command.Choice(name, name)).toList();
+
+		queries = new String[QUERIES];
+		for (int i = 0; i < QUERIES; i++)
+		{
+			String name = nameList.get(random.nextInt(nameList.size()));
+			StringBuilder query = new StringBuilder(name.substring(0, 4 + random.nextInt(name.length() - 3)));
+			int typo = random.nextInt(query.length());
+			switch (random.nextInt(3))
+			{
+				case 0 -> query.deleteCharAt(typo); //少打一個字
+				case 1 -> query.setCharAt(typo, (char) ('a' + random.nextInt(26))); //打錯一個字
+				default -> query.insert(typo, (char) ('a' + random.nextInt(26))); //多打一個字
+			}
+			queries[i] = query.toString();
+		}
+	}
+
+	private static String randomWord(Random random, int length)
+	{
+		char[] word = new char[length];
+		for (int i = 0; i < length; i++)
+			word[i] = random.nextInt(8) == 0 ? '_' : (char) ('a' + random.nextInt(26));
+		return new String(word);
+	}
+
+	@Benchmark
+	public List<Command.Choice> completionIndex()
+	{
+		return index.complete(queries[next++ & (QUERIES - 1)], LIMIT);
+	}
+
+	@Benchmark
+	public List<Command.Choice> substringScan()
+	{
+		String query = queries[next++ & (QUERIES - 1)];
+		return choices.stream().filter(choice -> choice.getName().contains(query)).limit(LIMIT).toList();
+	}
+}
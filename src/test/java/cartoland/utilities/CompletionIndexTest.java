@@ -0,0 +1,79 @@
+package cartoland.utilities;
+
+import net.dv8tion.jda.api.interactions.commands.Command;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of the matching and ranking of {@link CompletionIndex}.
+ *
+ * @since 2.2
+ * @author Alex Cai
+ */
+class CompletionIndexTest
+{
+	private static final int LIMIT = 25; //Discord最多給25個選項
+	private static final CompletionIndex COMMANDS = CompletionIndex.ofNames(List.of(
+			"tellraw", "tell", "title", "teleport", "rawr", "execute", "scoreboard", "summon", "straw", "data"));
+
+	private static List<String> complete(CompletionIndex index, String query)
+	{
+		return index.complete(query, LIMIT).stream().map(Command.Choice::getName).toList();
+	}
+
+	@Test
+	void findsNamesWithATypo()
+	{
+		assertTrue(complete(COMMANDS, "telraw").contains("tellraw"));
+		assertTrue(complete(COMMANDS, "scorebaord").contains("scoreboard"));
+		assertTrue(complete(COMMANDS, "EXECUTE").contains("execute"), "case should be ignored");
+	}
+
+	@Test
+	void ranksPrefixesBeforeSubstringsBeforeTypos()
+	{
+		//rawr以raw開頭 straw和tellraw含有raw 其中straw的位置比較前面
+		assertEquals(List.of("rawr", "straw", "tellraw"), complete(COMMANDS, "raw"));
+		assertEquals(List.of("teleport", "tell", "tellraw"), complete(COMMANDS, "tel")); //同一層按照字母順序
+		assertEquals("tellraw", complete(COMMANDS, "tellra").getFirst());
+	}
+
+	@Test
+	void doesNotAllowTyposInShortQueries()
+	{
+		assertEquals(List.of(), complete(COMMANDS, "rwa")); //少於4個字元 不容許錯字
+		assertEquals(List.of(), complete(COMMANDS, "xyz"));
+		assertEquals(List.of(), complete(COMMANDS, "sumomn"), "a swap takes two edits, more than a 6 character query allows");
+	}
+
+	@Test
+	void keepsTheBestChoicesWithinTheLimit()
+	{
+		List<String> names = new ArrayList<>();
+		for (int i = 99; i >= 0; i--)
+			names.add(String.format("item_%02d", i));
+		names.add("the_item");
+		CompletionIndex index = CompletionIndex.ofNames(names);
+
+		List<String> items = complete(index, "item");
+		assertEquals(LIMIT, items.size());
+		assertEquals("item_00", items.getFirst());
+		assertEquals("item_24", items.getLast());
+		assertFalse(items.contains("the_item"), "25 prefix matches come before a substring match");
+
+		assertEquals(LIMIT, complete(index, "").size());
+		assertEquals("item_00", complete(index, "").getFirst());
+	}
+
+	@Test
+	void returnsTheOriginalChoices()
+	{
+		Command.Choice choice = new Command.Choice("Alex Cai", "UC1234");
+		CompletionIndex index = new CompletionIndex(List.of(choice, new Command.Choice("Bob", "UC5678")));
+		assertSame(choice, index.complete("alex", LIMIT).getFirst());
+	}
+}
@@ -0,0 +1,189 @@
+package cartoland.utilities;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of the issue cache in {@link JiraHandle}, against a local stand-in of the bug tracker that serves a saved page
+ * and counts how many times each bug was requested. The cache is shrunk through system properties before
+ * {@link JiraHandle} is loaded, so that expiry and eviction happen within a test.
+ *
+ * @since 2.2
+ * @author Alex Cai
+ */
+class JiraHandleTest
+{
+	private static final long ISSUE_TTL_SECONDS = 2L;
+	private static final long MISSING_TTL_SECONDS = 1L;
+	private static final int CACHE_SIZE = 3;
+	private static final long TIMEOUT_SECONDS = 10L;
+
+	private static final Map<String, AtomicInteger> requests = new ConcurrentHashMap<>(); //每個bug被請求了幾次
+	private static final CountDownLatch slowResponse = new CountDownLatch(1); //MC-SLOW要等到這個才回應
+	private static HttpServer server;
+	private static byte[] page;
+
+	@BeforeAll
+	static void startServer() throws IOException
+	{
+		try (InputStream input = JiraHandleTest.class.getResourceAsStream("/jira/MC-87984.html"))
+		{
+			page = input.readAllBytes();
+		}
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+		server.createContext("/browse/", JiraHandleTest::handle);
+		server.start();
+
+		//JiraClient和JiraHandle在第一次使用時才會讀取這些設定
+		System.setProperty("cartoland.jiraBrowseUrl", "http://127.0.0.1:" + server.getAddress().getPort() + "/browse/");
+		System.setProperty("cartoland.jiraIssueTtlSeconds", Long.toString(ISSUE_TTL_SECONDS));
+		System.setProperty("cartoland.jiraMissingTtlSeconds", Long.toString(MISSING_TTL_SECONDS));
+		System.setProperty("cartoland.jiraCacheSize", Integer.toString(CACHE_SIZE));
+	}
+
+	@AfterAll
+	static void stopServer()
+	{
+		slowResponse.countDown();
+		server.stop(0);
+	}
+
+	private static void handle(HttpExchange exchange) throws IOException
+	{
+		String path = exchange.getRequestURI().getPath();
+		String bugID = path.substring(path.lastIndexOf('/') + 1);
+		requests.computeIfAbsent(bugID, key -> new AtomicInteger()).incrementAndGet();
+		if (bugID.startsWith("MC-404"))
+		{
+			exchange.sendResponseHeaders(404, -1L);
+			exchange.close();
+			return;
+		}
+		if (bugID.equals("MC-SLOW"))
+		{
+			try
+			{
+				slowResponse.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+			}
+			catch (InterruptedException exception)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+		exchange.getResponseHeaders().set("Content-Type", "text/html;charset=UTF-8");
+		exchange.sendResponseHeaders(200, page.length);
+		try (OutputStream output = exchange.getResponseBody())
+		{
+			output.write(page);
+		}
+	}
+
+	private static int requestCount(String bugID)
+	{
+		AtomicInteger count = requests.get(bugID);
+		return count == null ? 0 : count.get();
+	}
+
+	private static JiraHandle.Issue issue(String bugID) throws Exception
+	{
+		return JiraHandle.issue(bugID).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+	}
+
+	@Test
+	void parsesAndCachesIssue() throws Exception
+	{
+		JiraHandle.Issue issue = issue("MC-1");
+		assertEquals("MC-1", issue.bugID());
+		assertEquals("Hoppers don't pick up items dropped onto slabs & stairs", issue.summary());
+		assertEquals("Resolved", issue.status());
+		assertEquals("Fixed", issue.resolution());
+		assertEquals("Normal", issue.priority());
+		assertEquals("1.8.8", issue.firstAffectsVersion());
+		assertEquals("15w35b", issue.lastAffectsVersion());
+		assertEquals("15w36a", issue.fixVersions());
+		assertEquals(ZonedDateTime.parse("2015-09-03T13:30:22+02:00"), issue.created().withFixedOffsetZone());
+		assertEquals(ZonedDateTime.parse("2015-09-04T11:04:10+02:00"), issue.resolved().withFixedOffsetZone());
+		assertEquals("Minecraft: Java Edition", issue.projectName());
+		assertTrue(issue.description().startsWith("Items that land on top of a slab"));
+
+		assertSame(issue, issue("mc-1"), "the key should be case-insensitive and served from the cache");
+		assertEquals(1, requestCount("MC-1"));
+	}
+
+	@Test
+	void refetchesExpiredIssue() throws Exception
+	{
+		issue("MC-2");
+		issue("MC-2");
+		assertEquals(1, requestCount("MC-2"));
+
+		Thread.sleep(TimeUnit.SECONDS.toMillis(ISSUE_TTL_SECONDS) + 200L);
+		issue("MC-2");
+		assertEquals(2, requestCount("MC-2"));
+	}
+
+	@Test
+	void remembersMissingBugBriefly() throws Exception
+	{
+		for (int i = 0; i < 2; i++)
+		{
+			ExecutionException exception = assertThrows(ExecutionException.class, () -> issue("MC-404"));
+			JiraHandle.NoIssueException noIssue = assertInstanceOf(JiraHandle.NoIssueException.class, exception.getCause());
+			assertFalse(noIssue.pageExists());
+		}
+		assertEquals(1, requestCount("MC-404"), "a missing bug should be cached");
+
+		Thread.sleep(TimeUnit.SECONDS.toMillis(MISSING_TTL_SECONDS) + 200L);
+		assertThrows(ExecutionException.class, () -> issue("MC-404"));
+		assertEquals(2, requestCount("MC-404"), "a missing bug should expire sooner than an issue");
+	}
+
+	@Test
+	void evictsLeastRecentlyUsed() throws Exception
+	{
+		//這個測試的bug是最近使用的CACHE_SIZE個 不受其他測試影響
+		issue("MC-11");
+		issue("MC-12");
+		issue("MC-13");
+		issue("MC-11"); //MC-12變成最久沒用的
+		issue("MC-14"); //超過大小 MC-12被移除
+
+		issue("MC-11");
+		assertEquals(1, requestCount("MC-11"));
+		issue("MC-12");
+		assertEquals(2, requestCount("MC-12"));
+		assertTrue(JiraHandle.render().matches(".* [1-9]\\d* evicted.*"), JiraHandle.render());
+	}
+
+	@Test
+	void sharesRequestInFlight() throws Exception
+	{
+		List<CompletableFuture<JiraHandle.Issue>> lookups = new ArrayList<>();
+		for (int i = 0; i < 5; i++)
+			lookups.add(JiraHandle.issue(i % 2 == 0 ? "MC-SLOW" : "mc-slow"));
+		slowResponse.countDown();
+
+		JiraHandle.Issue first = lookups.getFirst().get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+		for (CompletableFuture<JiraHandle.Issue> lookup : lookups)
+			assertSame(first, lookup.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+		assertEquals(1, requestCount("MC-SLOW"));
+	}
+}
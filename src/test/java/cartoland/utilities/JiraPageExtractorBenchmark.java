@@ -0,0 +1,85 @@
+package cartoland.utilities;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link JiraPageExtractor} with a full Jsoup parse over the saved pages in {@code src/test/resources/jira}.
+ * Both start from the bytes of the response and end with the elements that {@link JiraHandle} reads. The extractor is
+ * fed in chunks of the size that the HTTP client delivers. Run with {@code -prof gc} to see the allocation per lookup.
+ *
+ * @since 2.2
+ * @author Alex Cai
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JiraPageExtractorBenchmark
+{
+	private static final int CHUNK_BYTES = 16 * 1024; //HttpClient一次給的大小
+
+	@Param({ "MC-87984.html", "MC-128099.html" })
+	public String page;
+
+	private ByteBuffer[] chunks;
+	private byte[] bytes;
+
+	@Setup
+	public void setup() throws IOException
+	{
+		bytes = JiraPageExtractorTest.page(page).getBytes(StandardCharsets.UTF_8);
+		chunks = new ByteBuffer[(bytes.length + CHUNK_BYTES - 1) / CHUNK_BYTES];
+		for (int i = 0; i < chunks.length; i++)
+			chunks[i] = ByteBuffer.wrap(bytes, i * CHUNK_BYTES, Math.min(CHUNK_BYTES, bytes.length - i * CHUNK_BYTES));
+	}
+
+	@Benchmark
+	public void extractor(Blackhole blackhole)
+	{
+		JiraPageExtractor extractor = new JiraPageExtractor(JiraHandle.ISSUE_CONTENT_ID, JiraHandle.TARGET_IDS);
+		HttpResponse.BodySubscriber<JiraPageExtractor> subscriber = extractor.subscriber(StandardCharsets.UTF_8);
+		boolean[] cancelled = { false };
+		subscriber.onSubscribe(new Flow.Subscription()
+		{
+			@Override
+			public void request(long n)
+			{
+			}
+
+			@Override
+			public void cancel()
+			{
+				cancelled[0] = true;
+			}
+		});
+		for (int i = 0; i < chunks.length && !cancelled[0]; i++)
+			subscriber.onNext(List.of(chunks[i].duplicate()));
+		if (!cancelled[0])
+			subscriber.onComplete();
+		for (String id : JiraHandle.TARGET_IDS)
+			blackhole.consume(extractor.element(id));
+	}
+
+	@Benchmark
+	public void jsoup(Blackhole blackhole)
+	{
+		Document document = Jsoup.parse(new String(bytes, StandardCharsets.UTF_8));
+		Element container = document.getElementById(JiraHandle.ISSUE_CONTENT_ID);
+		for (String id : JiraHandle.TARGET_IDS)
+			blackhole.consume(container != null ? container.getElementById(id) : null);
+	}
+}
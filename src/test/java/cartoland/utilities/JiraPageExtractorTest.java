@@ -0,0 +1,161 @@
+package cartoland.utilities;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of {@link JiraPageExtractor} over the saved pages in {@code src/test/resources/jira}. Every element that
+ * {@link JiraHandle} reads must be the same as the one found by a full Jsoup parse of the page, whether the page is fed
+ * at once, in small pieces, or as bytes that cut multibyte characters apart.
+ *
+ * @since 2.2
+ * @author Alex Cai
+ */
+class JiraPageExtractorTest
+{
+	static final String[] PAGES = { "MC-87984.html", "MC-197.html", "MC-128099.html" };
+
+	static String page(String fileName) throws IOException
+	{
+		try (InputStream input = JiraPageExtractorTest.class.getResourceAsStream("/jira/" + fileName))
+		{
+			assertNotNull(input, fileName);
+			return new String(input.readAllBytes(), StandardCharsets.UTF_8);
+		}
+	}
+
+	private static JiraPageExtractor extractor()
+	{
+		return new JiraPageExtractor(JiraHandle.ISSUE_CONTENT_ID, JiraHandle.TARGET_IDS);
+	}
+
+	//全部的元素都要和完整解析時的一樣 找不到的也要一樣找不到
+	private static void assertSameAsJsoup(String html, JiraPageExtractor extractor)
+	{
+		Document document = Jsoup.parse(html);
+		Element container = document.getElementById(JiraHandle.ISSUE_CONTENT_ID);
+		assertNotNull(container);
+		for (String id : JiraHandle.TARGET_IDS)
+		{
+			Element expected = container.getElementById(id);
+			Element actual = extractor.element(id);
+			if (expected == null)
+				assertNull(actual, id);
+			else
+			{
+				assertNotNull(actual, id);
+				assertEquals(expected.outerHtml(), actual.outerHtml(), id);
+				assertEquals(expected.text(), actual.text(), id);
+			}
+		}
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = { "MC-87984.html", "MC-197.html", "MC-128099.html" })
+	void matchesJsoupWhenFedAtOnce(String fileName) throws IOException
+	{
+		String html = page(fileName);
+		JiraPageExtractor extractor = extractor();
+		if (!extractor.feed(html))
+			extractor.finish();
+		assertTrue(extractor.containerFound());
+		assertSameAsJsoup(html, extractor);
+	}
+
+	@ParameterizedTest
+	@ValueSource(ints = { 1, 7, 64, 1000 })
+	void matchesJsoupWhenFedInPieces(int pieceLength) throws IOException
+	{
+		for (String fileName : PAGES)
+		{
+			String html = page(fileName);
+			JiraPageExtractor extractor = extractor();
+			boolean done = false;
+			for (int i = 0; i < html.length() && !done; i += pieceLength)
+				done = extractor.feed(html.subSequence(i, Math.min(i + pieceLength, html.length())));
+			if (!done)
+				extractor.finish();
+			assertSameAsJsoup(html, extractor);
+		}
+	}
+
+	@ParameterizedTest
+	@ValueSource(ints = { 1, 2, 5, 4096 })
+	void decodesBytesCutInsideCharacters(int chunkLength) throws Exception
+	{
+		//MC-197有中文 每個字3個位元組 會被切開
+		String html = page("MC-197.html");
+		byte[] bytes = html.getBytes(StandardCharsets.UTF_8);
+		JiraPageExtractor extractor = extractor();
+		var subscriber = extractor.subscriber(StandardCharsets.UTF_8);
+		boolean[] cancelled = { false };
+		subscriber.onSubscribe(new Flow.Subscription()
+		{
+			@Override
+			public void request(long n)
+			{
+				//測試直接送出全部的內容
+			}
+
+			@Override
+			public void cancel()
+			{
+				cancelled[0] = true;
+			}
+		});
+		for (int i = 0; i < bytes.length && !cancelled[0]; i += chunkLength)
+			subscriber.onNext(List.of(ByteBuffer.wrap(bytes, i, Math.min(chunkLength, bytes.length - i))));
+		if (!cancelled[0])
+			subscriber.onComplete();
+
+		assertSame(extractor, subscriber.getBody().toCompletableFuture().get(1L, TimeUnit.SECONDS));
+		assertSameAsJsoup(html, extractor);
+		assertTrue(extractor.element("description-val").text().contains("村民不會在床上睡覺 — ünïcode"));
+	}
+
+	@Test
+	void stopsReadingOnceEverythingIsFound() throws IOException
+	{
+		//MC-87984有全部的元素 MC-128099還沒解決 沒有resolutiondate-val 要讀到容器結束
+		String html = page("MC-87984.html");
+		int comments = html.indexOf("id=\"activitymodule\"");
+		JiraPageExtractor extractor = extractor();
+		int fed = 0;
+		while (fed < html.length() && !extractor.feed(html.subSequence(fed, Math.min(fed + 64, html.length()))))
+			fed += 64;
+		assertTrue(fed < comments, "the comments after the last target should not be read, stopped at " + fed);
+	}
+
+	@Test
+	void ignoresElementsOutsideOfTheContainer() throws IOException
+	{
+		JiraPageExtractor extractor = extractor();
+		if (!extractor.feed(page("MC-197.html")))
+			extractor.finish();
+		assertNull(extractor.element("fixfor-val"), "fixfor-val only appears in a comment, a textarea and the footer");
+	}
+
+	@Test
+	void reportsMissingContainer() throws IOException
+	{
+		JiraPageExtractor extractor = extractor();
+		if (!extractor.feed(page("private.html")))
+			extractor.finish();
+		assertFalse(extractor.containerFound());
+		assertNull(extractor.element("summary-val"));
+	}
+}
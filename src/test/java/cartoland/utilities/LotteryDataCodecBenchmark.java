@@ -0,0 +1,94 @@
+package cartoland.utilities;
+
+import cartoland.utilities.CommandBlocksHandle.LotteryData;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the binary format of lottery data with the Java serialization it replaced. Loading reads a file in both
+ * cases. Storing only encodes into memory, since writing the bytes to the disk costs the same for both, and the
+ * binary file is smaller anyway.
+ *
+ * @since 2.2
+ * @author Alex Cai
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+@State(Scope.Benchmark)
+public class LotteryDataCodecBenchmark
+{
+	@Param({ "10000", "100000", "1000000" })
+	public int users;
+
+	private final CommandBlocksHandle.LotteryDataCodec codec = new CommandBlocksHandle.LotteryDataCodec();
+	private HashMap<Long, LotteryData> map;
+	private Path directory;
+	private Path binaryFile;
+	private Path serializedFile;
+
+	@Setup
+	@SuppressWarnings("unchecked")
+	public void setup() throws IOException
+	{
+		directory = Files.createTempDirectory("lottery");
+		binaryFile = directory.resolve("lottery_data.bin");
+		Files.write(binaryFile, LotteryDataCodecTest.file(users));
+		map = (HashMap<Long, LotteryData>) codec.decode(binaryFile.toString());
+		serializedFile = directory.resolve("lottery_data.ser");
+		Files.write(serializedFile, serialize());
+	}
+
+	@TearDown
+	public void tearDown() throws IOException
+	{
+		Files.delete(binaryFile);
+		Files.delete(serializedFile);
+		Files.delete(directory);
+	}
+
+	@Benchmark
+	public byte[] storeBinary()
+	{
+		return codec.encode(map);
+	}
+
+	@Benchmark
+	public Object loadBinary() throws IOException
+	{
+		return codec.decode(binaryFile.toString());
+	}
+
+	@Benchmark
+	public byte[] storeSerialized() throws IOException
+	{
+		return serialize();
+	}
+
+	@Benchmark
+	public Object loadSerialized() throws IOException, ClassNotFoundException
+	{
+		try (ObjectInputStream input = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(serializedFile))))
+		{
+			return (Map<?, ?>) input.readObject();
+		}
+	}
+
+	private byte[] serialize() throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream output = new ObjectOutputStream(bytes))
+		{
+			output.writeObject(map);
+		}
+		return bytes.toByteArray();
+	}
+}
@@ -0,0 +1,150 @@
+package cartoland.utilities;
+
+import cartoland.utilities.CommandBlocksHandle.LotteryData;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests of the binary format of lottery data. The files are written by hand in the documented layout, so a change
+ * of the format breaks these tests instead of the files of a running bot.
+ *
+ * @since 2.2
+ * @author Alex Cai
+ */
+class LotteryDataCodecTest
+{
+	private static final int MAGIC = 0x434C5444;
+	private static final int RECORD_BYTES = 64;
+	private static final String[] NAMES = { "Alex", "村民", "Steve" };
+
+	@TempDir
+	Path directory;
+
+	/**
+	 * Build a file of {@code count} users in the layout of {@code lottery_data.bin}. Every user has different
+	 * numbers, every fourth user has no name, and the rest share the names in {@link #NAMES}.
+	 */
+	static byte[] file(int count)
+	{
+		byte[][] names = new byte[NAMES.length][];
+		int namesBytes = Integer.BYTES;
+		for (int i = 0; i < NAMES.length; i++)
+		{
+			names[i] = NAMES[i].getBytes(StandardCharsets.UTF_8);
+			namesBytes += Integer.BYTES + names[i].length;
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES * 3 + count * RECORD_BYTES + namesBytes);
+		buffer.putInt(MAGIC).putInt(1).putInt(count);
+		for (int i = 0; i < count; i++)
+		{
+			buffer.putLong(100_000_000_000_000_000L + i).putLong(i * 7L); //userID blocks
+			for (int j = 0; j < 8; j++) //勝敗場數
+				buffer.putInt(i + j);
+			buffer.putLong(1_700_000_000L + i).putInt(i % 400); //lastClaimSecond streak
+			buffer.putInt(i % 4 == 0 ? -1 : i % NAMES.length);
+		}
+		buffer.putInt(names.length);
+		for (byte[] name : names)
+			buffer.putInt(name.length).put(name);
+		return buffer.array();
+	}
+
+	@SuppressWarnings("unchecked")
+	private Map<Long, LotteryData> decode(byte[] bytes) throws IOException
+	{
+		Path path = directory.resolve("lottery_data.bin");
+		Files.write(path, bytes);
+		return (Map<Long, LotteryData>) new CommandBlocksHandle.LotteryDataCodec().decode(path.toString());
+	}
+
+	private static void assertSameData(LotteryData expected, LotteryData actual)
+	{
+		assertEquals(expected.getName(), actual.getName());
+		assertEquals(expected.getBlocks(), actual.getBlocks());
+		assertEquals(expected.getBetWon(), actual.getBetWon());
+		assertEquals(expected.getBetLost(), actual.getBetLost());
+		assertEquals(expected.getBetShowHandWon(), actual.getBetShowHandWon());
+		assertEquals(expected.getBetShowHandLost(), actual.getBetShowHandLost());
+		assertEquals(expected.getSlotWon(), actual.getSlotWon());
+		assertEquals(expected.getSlotLost(), actual.getSlotLost());
+		assertEquals(expected.getSlotShowHandWon(), actual.getSlotShowHandWon());
+		assertEquals(expected.getSlotShowHandLost(), actual.getSlotShowHandLost());
+		assertEquals(expected.getStreak(), actual.getStreak());
+	}
+
+	@Test
+	void decodesTheDocumentedLayout() throws IOException
+	{
+		Map<Long, LotteryData> map = decode(file(5));
+		assertEquals(5, map.size());
+
+		LotteryData noName = map.get(100_000_000_000_000_000L);
+		assertNull(noName.getName());
+		assertEquals(0L, noName.getBlocks());
+
+		LotteryData data = map.get(100_000_000_000_000_002L);
+		assertEquals("Steve", data.getName());
+		assertEquals(14L, data.getBlocks());
+		assertEquals(2, data.getBetWon());
+		assertEquals(3, data.getBetLost());
+		assertEquals(4, data.getBetShowHandWon());
+		assertEquals(5, data.getBetShowHandLost());
+		assertEquals(6, data.getSlotWon());
+		assertEquals(7, data.getSlotLost());
+		assertEquals(8, data.getSlotShowHandWon());
+		assertEquals(9, data.getSlotShowHandLost());
+		assertEquals(2, data.getStreak());
+		assertEquals("村民", map.get(100_000_000_000_000_001L).getName());
+	}
+
+	@Test
+	void encodesRecordsOfSixtyFourBytesAndSharedNames() throws IOException
+	{
+		Map<Long, LotteryData> map = decode(file(1000));
+		byte[] encoded = new CommandBlocksHandle.LotteryDataCodec().encode(map);
+		assertEquals(file(1000).length, encoded.length, "each record should be 64 bytes and each name stored once");
+
+		Map<Long, LotteryData> decoded = decode(encoded);
+		assertEquals(map.keySet(), decoded.keySet());
+		for (Map.Entry<Long, LotteryData> idAndData : map.entrySet())
+			assertSameData(idAndData.getValue(), decoded.get(idAndData.getKey()));
+	}
+
+	@Test
+	void roundTripsJournalValues() throws IOException
+	{
+		CommandBlocksHandle.LotteryDataCodec codec = new CommandBlocksHandle.LotteryDataCodec();
+		Map<Long, LotteryData> map = decode(file(4));
+		for (LotteryData data : map.values())
+		{
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			codec.writeValue(new DataOutputStream(bytes), data);
+			LotteryData read = (LotteryData) codec.readValue(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+			assertSameData(data, read);
+		}
+	}
+
+	@Test
+	void rejectsCorruptNameLengthInJournal() throws IOException
+	{
+		CommandBlocksHandle.LotteryDataCodec codec = new CommandBlocksHandle.LotteryDataCodec();
+		LotteryData data = decode(file(2)).get(100_000_000_000_000_001L);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		codec.writeValue(new DataOutputStream(bytes), data);
+		byte[] record = bytes.toByteArray();
+		for (int corruptLength : new int[] { -2, Integer.MAX_VALUE })
+		{
+			ByteBuffer.wrap(record).putInt(RECORD_BYTES - Integer.BYTES, corruptLength); //名字的長度
+			assertThrows(IOException.class, () -> codec.readValue(new DataInputStream(new ByteArrayInputStream(record))));
+		}
+	}
+}